@@ -15,6 +15,11 @@
  */
 package org.terasology.accelerationblocks;
 
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import org.joml.Quaternionf;
 import org.joml.Vector3f;
 import org.joml.Vector3i;
@@ -26,6 +31,8 @@ import org.terasology.accelerationblocks.component.AccelerationComponent;
 import org.terasology.engine.core.Time;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
@@ -39,15 +46,47 @@ import org.terasology.engine.registry.In;
 import org.terasology.engine.world.BlockEntityRegistry;
 import org.terasology.engine.world.WorldProvider;
 import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.funnyblocks.BlockTable;
+import org.terasology.funnyblocks.FunnyBlocksStats;
+import org.terasology.funnyblocks.HandlerStats;
+import org.terasology.funnyblocks.PlayerProximity;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * This system reacts on Entities passing through block with AccelerationBlockComponent, adding AccelerationComponent to them
  * All Entities with AccelerationComponent get acceleration
+ * In continuous mode the acceleration is scaled by the frame's delta and sent as one impulse per interval instead of every frame
+ * Contiguous blocks giving the same acceleration form a lane: the component is only changed when entering and leaving the lane
+ * Entities near a player are updated every tick, distant ones in turns of {@link #FAR_BUCKETS} ticks with the time they missed
  */
 @RegisterSystem(RegisterMode.AUTHORITY)
 public class AccelerationSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
     private static final Logger logger = LoggerFactory.getLogger(AccelerationSystem.class);
+    private static final AccelerationComponent NOT_ACCELERATING = new AccelerationComponent();
+    // Seconds between the impulses sent to entities accelerated in continuous mode
+    private static final float CONTINUOUS_IMPULSE_INTERVAL = 0.1f;
+    // Number of buckets distant entities are spread over, one bucket is updated per tick
+    private static final int FAR_BUCKETS = 8;
+
+    // Acceleration given by each block, already rotated according to its side
+    private final BlockTable<AccelerationComponent> accelerationByBlock = new BlockTable<>(this::computeBlockAcceleration);
+
+    // Impulse integrated so far for entities in continuous mode, by entity id
+    private final TLongObjectMap<Vector3f> pendingImpulses = new TLongObjectHashMap<>();
+    private float continuousImpulseTimer;
+
+    // Accelerated entities near a player, by entity id
+    private final TLongObjectMap<EntityRef> nearEntities = new TLongObjectHashMap<>();
+    // Accelerated entities away from all players, spread over buckets by entity id
+    private final List<TLongObjectMap<EntityRef>> farEntities = new ArrayList<>();
+    // Game time in ms of the last update of each accelerated entity, by entity id
+    private final TLongLongMap lastUpdateTimes = new TLongLongHashMap();
+    private int farBucket;
+    private final Vector3f position = new Vector3f();
 
     @In
     private BlockEntityRegistry blockEntityProvider;
@@ -61,19 +100,147 @@ public class AccelerationSystem extends BaseComponentSystem implements UpdateSub
     @In
     private WorldProvider worldProvider;
 
+    @In
+    private BlockManager blockManager;
+
+    @In
+    private PlayerProximity playerProximity;
+
+    @In
+    private FunnyBlocksStats stats;
+
+    private HandlerStats updateStats;
+    private HandlerStats enterBlockStats;
+
+    @Override
+    public void initialise() {
+        updateStats = stats.getHandlerStats("AccelerationSystem.update");
+        enterBlockStats = stats.getHandlerStats("AccelerationSystem.onEnterBlock");
+        for (int i = 0; i < FAR_BUCKETS; i++) {
+            farEntities.add(new TLongObjectHashMap<>());
+        }
+    }
+
     @Override
     public void update(float delta) {
-        for (EntityRef entity : entityManager.getEntitiesWith(AccelerationComponent.class, LocationComponent.class)) {
-            AccelerationComponent acceleration = entity.getComponent(AccelerationComponent.class);
-            LocationComponent location = entity.getComponent(LocationComponent.class);
+        long startTime = updateStats.start();
+
+        continuousImpulseTimer += delta;
+        boolean sendContinuousImpulses = continuousImpulseTimer >= CONTINUOUS_IMPULSE_INTERVAL;
+        if (sendContinuousImpulses) {
+            continuousImpulseTimer = 0;
+        }
+
+        long now = time.getGameTimeInMs();
+
+        // Entities near a player are updated every tick
+        TLongObjectIterator<EntityRef> iterator = nearEntities.iterator();
+        while (iterator.hasNext()) {
+            iterator.advance();
+            EntityRef entity = iterator.value();
+            updateEntity(entity, delta, 1, sendContinuousImpulses, now);
+            if (!isNearPlayer(entity)) {
+                iterator.remove();
+                farEntities.get(getFarBucket(entity)).put(entity.getId(), entity);
+            }
+        }
+
+        // One bucket of distant entities is updated per tick, catching up on the time since their last update
+        farBucket = (farBucket + 1) % FAR_BUCKETS;
+        iterator = farEntities.get(farBucket).iterator();
+        while (iterator.hasNext()) {
+            iterator.advance();
+            EntityRef entity = iterator.value();
+            long lastUpdateTime = lastUpdateTimes.get(entity.getId());
+            // Entities that just moved here from the near entities were already updated this tick
+            if (lastUpdateTime == now) {
+                continue;
+            }
+            float catchUpDelta = (now - lastUpdateTime) / 1000f;
+            int frames = delta > 0 ? Math.max(1, Math.round(catchUpDelta / delta)) : 1;
+            updateEntity(entity, catchUpDelta, frames, true, now);
+            updateStats.count("distant entities updated");
+            if (isNearPlayer(entity)) {
+                iterator.remove();
+                nearEntities.put(entity.getId(), entity);
+            }
+        }
 
-            applyImpulse(acceleration, entity);
+        updateStats.end(startTime);
+    }
+
+    /**
+     * Applies the acceleration of an entity for the time since its last update.
+     *
+     * @param delta The time in seconds since the entity's last update.
+     * @param frames The number of frames that time stands for, for entities getting one impulse per frame.
+     */
+    private void updateEntity(EntityRef entity, float delta, int frames, boolean sendContinuousImpulses, long now) {
+        AccelerationComponent acceleration = entity.getComponent(AccelerationComponent.class);
+        if (acceleration == null || !entity.hasComponent(LocationComponent.class)) {
+            return;
+        }
+        updateStats.count("entities scanned");
+
+        if (acceleration.continuous) {
+            accumulateImpulse(acceleration, entity, delta, sendContinuousImpulses);
+        } else {
+            applyImpulse(acceleration, entity, frames);
         }
+        lastUpdateTimes.put(entity.getId(), now);
     }
 
-    private void applyImpulse(AccelerationComponent acceleration, EntityRef entity) {
-        Vector3f impulse = new Vector3f(acceleration.velocity);
+    private boolean isNearPlayer(EntityRef entity) {
+        LocationComponent location = entity.getComponent(LocationComponent.class);
+        if (location == null) {
+            return false;
+        }
+        location.getWorldPosition(position);
+        return playerProximity.isNearPlayer(position.x, position.y, position.z);
+    }
+
+    private static int getFarBucket(EntityRef entity) {
+        return (int) (entity.getId() % FAR_BUCKETS);
+    }
+
+    private void applyImpulse(AccelerationComponent acceleration, EntityRef entity, int frames) {
+        Vector3f impulse = new Vector3f(acceleration.velocity).mul(frames);
         entity.send(new CharacterImpulseEvent(impulse));
+        updateStats.count("impulses");
+    }
+
+    /**
+     * Integrates the acceleration over the frame's delta and only sends the summed up impulse every
+     * {@link #CONTINUOUS_IMPULSE_INTERVAL} seconds, so the result does not depend on the frame rate.
+     */
+    private void accumulateImpulse(AccelerationComponent acceleration, EntityRef entity, float delta, boolean send) {
+        Vector3f pendingImpulse = pendingImpulses.get(entity.getId());
+        if (pendingImpulse == null) {
+            pendingImpulse = new Vector3f();
+            pendingImpulses.put(entity.getId(), pendingImpulse);
+        }
+
+        pendingImpulse.fma(delta, acceleration.velocity);
+        if (send) {
+            entity.send(new CharacterImpulseEvent(new Vector3f(pendingImpulse)));
+            updateStats.count("impulses");
+            pendingImpulse.zero();
+        }
+    }
+
+    @ReceiveEvent
+    public void onAccelerationAdded(OnActivatedComponent event, EntityRef entity, AccelerationComponent acceleration) {
+        // Start near, the first update moves the entity to its bucket if no player is around
+        nearEntities.put(entity.getId(), entity);
+        lastUpdateTimes.put(entity.getId(), time.getGameTimeInMs());
+    }
+
+    @ReceiveEvent(components = {AccelerationComponent.class})
+    public void onAccelerationRemoved(BeforeDeactivateComponent event, EntityRef entity) {
+        pendingImpulses.remove(entity.getId());
+        nearEntities.remove(entity.getId());
+        farEntities.get(getFarBucket(entity)).remove(entity.getId());
+        lastUpdateTimes.remove(entity.getId());
     }
 
     @ReceiveEvent
@@ -84,27 +251,67 @@ public class AccelerationSystem extends BaseComponentSystem implements UpdateSub
         }
 
 
+        long startTime = enterBlockStats.start();
+
         Block block = event.getNewBlock();
-        if (blockIsAccelerating(block)) {
-            AccelerationBlockComponent blockAcceleration = block.getEntity().getComponent(AccelerationBlockComponent.class);
+        AccelerationComponent blockAcceleration = accelerationByBlock.get(block);
+        if (blockAcceleration != NOT_ACCELERATING) {
             AccelerationComponent acceleration = entity.getComponent(AccelerationComponent.class);
 
             if (acceleration == null) {
                 acceleration = new AccelerationComponent();
-                initAcceleration(acceleration, blockAcceleration, block.getDirection());
+                acceleration.copyFrom(blockAcceleration);
                 entity.addComponent(acceleration);
+            } else if (isSameLane(acceleration, blockAcceleration)) {
+                //still on the same lane, nothing to change or replicate
+                enterBlockStats.count("skipped acceleration writes");
+                enterBlockStats.end(startTime);
+                return;
             } else {
-                initAcceleration(acceleration, blockAcceleration, block.getDirection());
+                acceleration.copyFrom(blockAcceleration);
                 entity.saveComponent(acceleration);
             }
+            enterBlockStats.count("acceleration writes");
         } else {
             //check if it was accelerated before and removes acceleration component
             AccelerationComponent accelerationOld = entity.getComponent(AccelerationComponent.class);
 
             if (accelerationOld != null) {
                 entity.removeComponent(AccelerationComponent.class);
+                enterBlockStats.count("acceleration writes");
             }
         }
+
+        enterBlockStats.end(startTime);
+    }
+
+    /**
+     * Checks whether an entity's acceleration is the one a block gives, i.e. the block continues the lane the entity is on.
+     * All blocks of a lane (same block type and side) share one entry of the acceleration table, so comparing values is enough.
+     */
+    private boolean isSameLane(AccelerationComponent acceleration, AccelerationComponent blockAcceleration) {
+        return acceleration.velocity.equals(blockAcceleration.velocity)
+                && acceleration.ignoreBlockDirection == blockAcceleration.ignoreBlockDirection
+                && acceleration.continuous == blockAcceleration.continuous;
+    }
+
+    /**
+     * Computes the acceleration a block gives, rotated according to the block's side.
+     * It is computed only the first time a block is seen, so entering an acceleration block is a table lookup.
+     *
+     * @param block The block to get the acceleration of
+     * @return The acceleration of the block, or {@link #NOT_ACCELERATING} if the block does not accelerate
+     */
+    AccelerationComponent computeBlockAcceleration(Block block) {
+        AccelerationBlockComponent blockAcceleration = block.getPrefab()
+                .map(prefab -> prefab.getComponent(AccelerationBlockComponent.class))
+                .orElse(null);
+        if (blockAcceleration == null) {
+            return NOT_ACCELERATING;
+        }
+        AccelerationComponent acceleration = new AccelerationComponent();
+        initAcceleration(acceleration, blockAcceleration, block.getDirection());
+        return acceleration;
     }
 
     private void initAcceleration(AccelerationComponent acceleration, AccelerationBlockComponent blockAcceleration, Side side) {
@@ -132,6 +339,7 @@ public class AccelerationSystem extends BaseComponentSystem implements UpdateSub
 
         acceleration.velocity = velocity;
         acceleration.ignoreBlockDirection = blockAcceleration.ignoreBlockDirection;
+        acceleration.continuous = blockAcceleration.continuous;
     }
 
     /**
@@ -156,7 +364,20 @@ public class AccelerationSystem extends BaseComponentSystem implements UpdateSub
         return (int) Math.ceil(characterMovementComponent.height) - 1 == relativePosition.y;
     }
 
-    private boolean blockIsAccelerating(Block block) {
-        return block.getEntity().hasComponent(AccelerationBlockComponent.class);
+    @Override
+    public void postBegin() {
+        // Precompute the accelerations of all blocks known so far, blocks registered later are added when first entered
+        for (Block block : blockManager.listRegisteredBlocks()) {
+            accelerationByBlock.get(block);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        accelerationByBlock.clear();
+        pendingImpulses.clear();
+        nearEntities.clear();
+        farEntities.forEach(TLongObjectMap::clear);
+        lastUpdateTimes.clear();
     }
 }
@@ -10,9 +10,13 @@ public final class AccelerationBlockComponent implements Component<AccelerationB
 
     public boolean ignoreBlockDirection;
 
+    // If true, velocity is applied per second, scaled by the frame's delta, instead of once per frame
+    public boolean continuous;
+
     @Override
     public void copyFrom(AccelerationBlockComponent other) {
         this.velocity.set(other.velocity);
         this.ignoreBlockDirection = other.ignoreBlockDirection;
+        this.continuous = other.continuous;
     }
 }
@@ -8,11 +8,12 @@ import org.terasology.gestalt.entitysystem.component.Component;
 public final class AccelerationComponent implements Component<AccelerationComponent> {
     public Vector3f velocity = new Vector3f();
     public boolean ignoreBlockDirection;
+    public boolean continuous;
 
     @Override
     public void copyFrom(AccelerationComponent other) {
         this.velocity.set(other.velocity);
         this.ignoreBlockDirection = other.ignoreBlockDirection;
-        
+        this.continuous = other.continuous;
     }
 }
@@ -2,37 +2,79 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.breakingblocks;
 
-import org.joml.Vector3f;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terasology.breakingblocks.component.BreakingComponent;
+import org.terasology.breakingblocks.component.BrokenBreakingBlocksComponent;
 import org.terasology.engine.core.Time;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.event.EventPriority;
+import org.terasology.engine.entitySystem.event.Priority;
 import org.terasology.engine.entitySystem.prefab.PrefabManager;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
 import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
-import org.terasology.engine.logic.characters.CharacterMoveInputEvent;
+import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.console.commandSystem.annotations.CommandParam;
+import org.terasology.engine.logic.delay.DelayManager;
+import org.terasology.engine.logic.delay.DelayedActionTriggeredEvent;
+import org.terasology.engine.logic.health.DestroyEvent;
+import org.terasology.engine.logic.health.DoDestroyEvent;
 import org.terasology.engine.logic.health.EngineDamageTypes;
-import org.terasology.engine.logic.location.LocationComponent;
+import org.terasology.engine.logic.permission.PermissionManager;
+import org.terasology.engine.math.Side;
 import org.terasology.engine.registry.In;
 import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
 import org.terasology.engine.world.block.BlockComponent;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.engine.world.chunks.Chunks;
+import org.terasology.funnyblocks.FunnyBlocksStats;
+import org.terasology.funnyblocks.HandlerStats;
+import org.terasology.funnyblocks.PlayerProximity;
+import org.terasology.funnyblocks.TriggerBlockIndex;
+import org.terasology.funnyblocks.event.OnSteppedOnBlockEvent;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 import org.terasology.math.TeraMath;
 import org.terasology.module.health.events.DoDamageEvent;
 
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
 /**
  * This class manages and controls Breaking blocks.
  * <p>
  * <p>BreakingBlocks break after a while when you move over them.</p>
+ * <p>Triggered blocks are scheduled with the {@link DelayManager}, so only blocks that are due are processed.
+ * Due blocks are damaged in the order they became due, with a limit per tick to spread out large collapses.</p>
+ * <p>In collapse mode a destroyed block makes its Breaking neighbours crumble after a short delay, spreading breadth
+ * first over the following ticks.</p>
+ * <p>Destroyed blocks with a regenerate delay are restored once it has passed, grouped per chunk.</p>
+ * <p>Damage to blocks away from all players is inflicted less often, together with the intervals missed meanwhile.</p>
  */
 
 @RegisterSystem(RegisterMode.AUTHORITY)
 public class BreakingSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
     private static final Logger logger = LoggerFactory.getLogger(BreakingSystem.class);
+    private static final String BREAK_ACTION_ID = "FunnyBlocks:breakingBlockDamage";
+    private static final int DEFAULT_DESTRUCTION_BUDGET = 32;
+    // Time in seconds between two checks for destroyed blocks that are due to be restored
+    private static final float RESTORE_CHECK_INTERVAL = 1f;
+    // Time in seconds between two rounds of damage to blocks away from all players
+    private static final float FAR_UPDATE_INTERVAL = 1f;
 
     @In
     private EntityManager entityManager;
@@ -46,83 +88,415 @@ public class BreakingSystem extends BaseComponentSystem implements UpdateSubscri
     @In
     private Time time;
 
+    @In
+    private DelayManager delayManager;
+
+    @In
+    private BlockManager blockManager;
+
+    @In
+    private TriggerBlockIndex triggerBlockIndex;
+
+    @In
+    private PlayerProximity playerProximity;
+
+    @In
+    private FunnyBlocksStats stats;
+
+    private HandlerStats steppedOnBlockStats;
+    private HandlerStats breakTimeStats;
+    private HandlerStats updateStats;
+    private HandlerStats restoreStats;
+
+    // Breaking blocks whose damage is due, in the order they became due
+    private final Queue<EntityRef> destructionQueue = new ArrayDeque<>();
+    // Maximum number of Breaking blocks damaged per tick
+    private int destructionBudget = DEFAULT_DESTRUCTION_BUDGET;
+    // Breaking blocks away from all players whose damage is due, handled every FAR_UPDATE_INTERVAL
+    private final Queue<EntityRef> farDestructionQueue = new ArrayDeque<>();
+    private float farUpdateTimer;
+
+    // Positions waiting to crumble in collapse mode, earliest first and in breadth first order for equal times
+    private final Queue<CollapseStep> collapseFrontier = new PriorityQueue<>(
+            Comparator.comparingLong((CollapseStep step) -> step.dueTime).thenComparingLong(step -> step.sequence));
+    // Packed positions already reached by the running collapse, so no block is added to the frontier twice
+    private final TLongSet collapseVisited = new TLongHashSet();
+    private long collapseSequence;
+
+    // Entity holding the destroyed blocks waiting to be restored, created when the first one is destroyed
+    private EntityRef brokenBlocksEntity = EntityRef.NULL;
+    // Earliest restore time of the destroyed blocks, so the list is only walked when something is due
+    private long nextRestoreTime = Long.MAX_VALUE;
+    private float restoreCheckTimer;
+
+    @Override
+    public void initialise() {
+        steppedOnBlockStats = stats.getHandlerStats("BreakingSystem.onSteppedOnBlock");
+        breakTimeStats = stats.getHandlerStats("BreakingSystem.onBreakTime");
+        updateStats = stats.getHandlerStats("BreakingSystem.update");
+        restoreStats = stats.getHandlerStats("BreakingSystem.restoreBrokenBlocks");
+    }
+
+    @Override
+    public void postBegin() {
+        // On startup fetch the destroyed blocks that still have to be restored
+        for (EntityRef entity : entityManager.getEntitiesWith(BrokenBreakingBlocksComponent.class)) {
+            brokenBlocksEntity = entity;
+            for (long restoreTime : entity.getComponent(BrokenBreakingBlocksComponent.class).restoreTimes) {
+                nextRestoreTime = Math.min(nextRestoreTime, restoreTime);
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        destructionQueue.clear();
+        farDestructionQueue.clear();
+        collapseFrontier.clear();
+        collapseVisited.clear();
+        brokenBlocksEntity = EntityRef.NULL;
+        nextRestoreTime = Long.MAX_VALUE;
+    }
+
     /**
-     * This is called when the character is moving.
+     * This is called when the character is standing on a trigger block.
      *
-     * @param moveInputEvent The details of the movement.
+     * @param event The details of the block underneath the player.
      * @param player The player entity.
-     * @param location The player's location.
      */
-    @ReceiveEvent(components = {LocationComponent.class})
-    public void onCharacterMovement(CharacterMoveInputEvent moveInputEvent, EntityRef player, LocationComponent location) {
+    @ReceiveEvent
+    public void onSteppedOnBlock(OnSteppedOnBlockEvent event, EntityRef player) {
+        long startTime = steppedOnBlockStats.start();
+
+        // Get the block underneath the player
+        EntityRef entity = event.getBlockEntity();
+
+        // Get the Breaking block's properties
+        BreakingComponent breakingComponent = entity.getComponent(BreakingComponent.class);
+
+        // If the block underneath the player is a Breaking block that has not been walked over
+        if (breakingComponent != null && !breakingComponent.triggered) {
+            // Trigger destruction
+            breakingComponent.triggered = true;
+            // Set time for next damage infliction
+            scheduleBreak(entity, breakingComponent, getBreakIntervalInMs(breakingComponent));
+            steppedOnBlockStats.count("triggered blocks");
+        }
+
+        steppedOnBlockStats.end(startTime);
+    }
+
+    /**
+     * This is called when a Breaking block is loaded.
+     * <p>
+     * Pending damage is stored with the block by the {@link DelayManager}, but blocks triggered before it was used for
+     * this need to be scheduled again.
+     *
+     * @param event The activation event.
+     * @param entity The Breaking block entity.
+     * @param breakingComponent The Breaking block's properties.
+     */
+    @ReceiveEvent(components = {BlockComponent.class})
+    public void onActivated(OnActivatedComponent event, EntityRef entity, BreakingComponent breakingComponent) {
+        if (breakingComponent.triggered && !delayManager.hasDelayedAction(entity, BREAK_ACTION_ID)) {
+            scheduleBreak(entity, breakingComponent, Math.max(0, breakingComponent.breakTime - time.getGameTimeInMs()));
+        }
+    }
+
+    /**
+     * This is called when the time for the next damage infliction of a Breaking block has come.
+     *
+     * @param event The details of the scheduled action.
+     * @param entity The Breaking block entity.
+     * @param breakingComponent The Breaking block's properties.
+     */
+    @ReceiveEvent
+    public void onBreakTime(DelayedActionTriggeredEvent event, EntityRef entity, BreakingComponent breakingComponent) {
+        if (!event.getActionId().equals(BREAK_ACTION_ID) || !breakingComponent.triggered) {
+            return;
+        }
+
+        // Queue the damage, it is inflicted in update within the per tick budget
+        destructionQueue.add(entity);
+        breakTimeStats.count("queued damage");
+    }
+
+    /**
+     * Inflicts the queued damage in the order the blocks became due and crumbles the collapse frontier, at most
+     * {@link #destructionBudget} blocks per tick, so that a large floor of Breaking blocks collapses over several frames.
+     * Blocks away from all players are set aside and damaged every {@link #FAR_UPDATE_INTERVAL} seconds instead.
+     *
+     * @param delta The time since the last update.
+     */
+    @Override
+    public void update(float delta) {
+        restoreCheckTimer += delta;
+        if (restoreCheckTimer >= RESTORE_CHECK_INTERVAL) {
+            restoreCheckTimer = 0;
+            if (time.getGameTimeInMs() >= nextRestoreTime) {
+                restoreBrokenBlocks();
+            }
+        }
+
+        farUpdateTimer += delta;
+        boolean updateFarBlocks = farUpdateTimer >= FAR_UPDATE_INTERVAL;
+        if (updateFarBlocks) {
+            farUpdateTimer = 0;
+        }
 
-        // Get the player's location
-        Vector3f playerWorldLocation = location.getWorldPosition(new Vector3f());
+        // A finished collapse must not keep its positions, as the blocks may be restored and collapse again
+        if (collapseFrontier.isEmpty()) {
+            collapseVisited.clear();
+        }
 
-        // If it doesn't exist
-        if (playerWorldLocation == null) {
-            // Something is very wrong so return
+        if (destructionQueue.isEmpty() && collapseFrontier.isEmpty() && (!updateFarBlocks || farDestructionQueue.isEmpty())) {
             return;
         }
 
-        // Iterate through all the Breaking blocks
-        for (EntityRef entity : entityManager.getEntitiesWith(BreakingComponent.class)) {
-            // Get the block's location data
-            LocationComponent entityLocation = entity.getComponent(LocationComponent.class);
-            BlockComponent blockComponent = entity.getComponent(BlockComponent.class);
+        long startTime = updateStats.start();
+        // Only blocks that are actually damaged or destroyed count against the budget
+        int processed = 0;
 
-            // If it does not exist
-            if (entityLocation == null) {
-                // This block is not in the world so move onto the next one
+        while (processed < destructionBudget && !destructionQueue.isEmpty()) {
+            EntityRef entity = destructionQueue.poll();
+            BreakingComponent breakingComponent = entity.getComponent(BreakingComponent.class);
+            // The block may have been destroyed by something else while it was waiting
+            if (breakingComponent == null || !breakingComponent.triggered) {
                 continue;
             }
 
-            // Get the block's position
-            Vector3f entityWorldLocation = entityLocation.getWorldPosition(new Vector3f());
-
-            // If it does not exist
-            if (entityWorldLocation == null) {
-                // Move on (this should never be called)
+            BlockComponent blockComponent = entity.getComponent(BlockComponent.class);
+            if (blockComponent != null && !isNearPlayer(blockComponent.getPosition())) {
+                // Nobody is around to see it, so the damage is inflicted later together with the intervals missed meanwhile
+                farDestructionQueue.add(entity);
                 continue;
             }
 
-            // If the player's location matches the block's on the x and z axis (we round it to make the numbers usable)
-            if (Math.round(playerWorldLocation.x) == entityWorldLocation.x && Math.round(playerWorldLocation.z) == entityWorldLocation.z) {
-
-                // If the block is underneath the player
-                if (Math.round(playerWorldLocation.y - 1) == entityWorldLocation.y) {
-
-                    // Get the Breaking block's properties
-                    BreakingComponent breakingComponent = entity.getComponent(BreakingComponent.class);
-
-                    // If block has not been walked over
-                    if (!breakingComponent.triggered) {
-                        // Trigger destruction
-                        breakingComponent.triggered = true;
-                        // Set time for next damage infliction
-                        breakingComponent.breakTime = time.getGameTimeInMs() + TeraMath.floorToInt(breakingComponent.breakInterval * 1000);
-                        entity.saveComponent(breakingComponent);
-                    }
-                    // We've found a block underneath us so there is no need to continue looking
-                    break;
+            // Reset breakTime to increment by breakInterval, counted from when the damage is actually inflicted
+            scheduleBreak(entity, breakingComponent, getBreakIntervalInMs(breakingComponent));
+            entity.send(new DoDamageEvent(1, EngineDamageTypes.PHYSICAL.get()));
+            updateStats.count("damage events");
+            processed++;
+        }
+
+        long now = time.getGameTimeInMs();
+        if (updateFarBlocks) {
+            while (processed < destructionBudget && !farDestructionQueue.isEmpty()) {
+                if (catchUpBreak(farDestructionQueue.poll(), now)) {
+                    processed++;
                 }
             }
         }
 
+        while (processed < destructionBudget && !collapseFrontier.isEmpty()) {
+            if (collapseFrontier.peek().dueTime > now) {
+                break;
+            }
+            CollapseStep step = collapseFrontier.poll();
+            EntityRef entity = triggerBlockIndex.getTriggerBlockAt(step.x, step.y, step.z);
+            if (entity.hasComponent(BreakingComponent.class)) {
+                // The block's own destroy handler adds its neighbours to the frontier
+                entity.send(new DoDestroyEvent(EntityRef.NULL, EntityRef.NULL, EngineDamageTypes.PHYSICAL.get()));
+                updateStats.count("collapsed blocks");
+                processed++;
+            }
+        }
+
+        updateStats.end(startTime);
     }
 
-    @Override
-    public void update(float delta) {
-        for (EntityRef entity : entityManager.getEntitiesWith(BreakingComponent.class)) {
-            BreakingComponent breakingComponent = entity.getComponent(BreakingComponent.class);
-            long breakTime = breakingComponent.breakTime;
-            // Send damage event if worldTime exceeds breakTime
-            if (time.getGameTimeInMs() >= breakTime && breakingComponent.triggered) {
-                // Reset breakTime to increment by breaKInterval
-                breakingComponent.breakTime = time.getGameTimeInMs() + TeraMath.floorToInt(breakingComponent.breakInterval * 1000);
-                entity.saveComponent(breakingComponent);
-                entity.send(new DoDamageEvent(1, EngineDamageTypes.PHYSICAL.get()));
+    /**
+     * This is called when a Breaking block is destroyed, once the destruction can no longer be cancelled.
+     * <p>
+     * Blocks with a regenerate delay are recorded to be restored later.
+     * In collapse mode the adjacent Breaking blocks are added to the collapse frontier, which {@link #update(float)}
+     * works through breadth first once their delay has passed.
+     * Runs before the engine replaces the block with air, while the block entity still has its components.
+     *
+     * @param event The destruction event.
+     * @param entity The Breaking block entity.
+     * @param breakingComponent The Breaking block's properties.
+     * @param blockComponent The block's position.
+     */
+    @Priority(EventPriority.PRIORITY_HIGH)
+    @ReceiveEvent
+    public void onDestroy(DestroyEvent event, EntityRef entity, BreakingComponent breakingComponent,
+                          BlockComponent blockComponent) {
+        Vector3ic position = blockComponent.getPosition();
+        if (breakingComponent.regenerateDelay > 0) {
+            recordBrokenBlock(position, blockComponent.getBlock(),
+                    time.getGameTimeInMs() + TeraMath.floorToInt(breakingComponent.regenerateDelay * 1000));
+        }
+
+        if (!breakingComponent.collapse) {
+            return;
+        }
+
+        // Destroyed outside a running collapse, e.g. by a player, so this starts a new one
+        if (collapseFrontier.isEmpty()) {
+            collapseVisited.clear();
+        }
+        collapseVisited.add(TriggerBlockIndex.packPosition(position.x(), position.y(), position.z()));
+        long dueTime = time.getGameTimeInMs() + TeraMath.floorToInt(breakingComponent.collapseDelay * 1000);
+
+        for (Side side : Side.values()) {
+            Vector3ic direction = side.direction();
+            int x = position.x() + direction.x();
+            int y = position.y() + direction.y();
+            int z = position.z() + direction.z();
+            if (triggerBlockIndex.getTriggerBlockAt(x, y, z).hasComponent(BreakingComponent.class)
+                    && collapseVisited.add(TriggerBlockIndex.packPosition(x, y, z))) {
+                collapseFrontier.add(new CollapseStep(x, y, z, dueTime, collapseSequence++));
+            }
+        }
+    }
+
+    @Command(shortDescription = "Sets how many Breaking blocks may be damaged per tick",
+            runOnServer = true, requiredPermission = PermissionManager.DEBUG_PERMISSION)
+    public String breakingBlockBudget(@CommandParam("budget") int budget) {
+        if (budget < 1) {
+            return "The budget must be at least 1";
+        }
+        destructionBudget = budget;
+        return "Breaking blocks damaged per tick: " + budget;
+    }
+
+    /**
+     * Inflicts the damage of a block that waited longer than its break time, one damage for each break interval that
+     * passed, and schedules the next damage so that the block keeps its regular pace.
+     *
+     * @return Whether the block was damaged, false if it was destroyed by something else while it was waiting.
+     */
+    private boolean catchUpBreak(EntityRef entity, long now) {
+        BreakingComponent breakingComponent = entity.getComponent(BreakingComponent.class);
+        if (breakingComponent == null || !breakingComponent.triggered) {
+            return false;
+        }
+
+        long interval = getBreakIntervalInMs(breakingComponent);
+        long missedIntervals = getMissedIntervals(breakingComponent.breakTime, interval, now);
+        long nextBreakTime = breakingComponent.breakTime + (missedIntervals + 1) * interval;
+        scheduleBreak(entity, breakingComponent, Math.max(0, nextBreakTime - now));
+        entity.send(new DoDamageEvent((int) Math.min(Integer.MAX_VALUE, missedIntervals + 1), EngineDamageTypes.PHYSICAL.get()));
+        updateStats.count("distant damage events");
+        return true;
+    }
+
+    /**
+     * Counts the break intervals that passed since a block's damage became due.
+     *
+     * @param breakTime The time in ms the damage became due.
+     * @param interval The block's break interval in ms.
+     * @param now The current time in ms.
+     * @return The number of whole intervals since the break time, 0 if the block has no interval.
+     */
+    static long getMissedIntervals(long breakTime, long interval, long now) {
+        return interval > 0 ? Math.max(0, now - breakTime) / interval : 0;
+    }
+
+    private boolean isNearPlayer(Vector3ic position) {
+        return playerProximity.isNearPlayer(position.x(), position.y(), position.z());
+    }
+
+    private void recordBrokenBlock(Vector3ic position, Block block, long restoreTime) {
+        if (!brokenBlocksEntity.exists()) {
+            brokenBlocksEntity = entityManager.create(new BrokenBreakingBlocksComponent());
+        }
+
+        BrokenBreakingBlocksComponent brokenBlocks = brokenBlocksEntity.getComponent(BrokenBreakingBlocksComponent.class);
+        brokenBlocks.positions.add(new Vector3i(position));
+        brokenBlocks.blocks.add(block.getURI().toString());
+        brokenBlocks.restoreTimes.add(restoreTime);
+        brokenBlocksEntity.saveComponent(brokenBlocks);
+        nextRestoreTime = Math.min(nextRestoreTime, restoreTime);
+    }
+
+    /**
+     * Restores the destroyed blocks that are due, one batched world update per chunk so that each chunk is only
+     * updated and re-meshed once even when a whole course resets.
+     * Blocks in chunks that are not loaded stay recorded until their chunk is loaded again.
+     */
+    private void restoreBrokenBlocks() {
+        long startTime = restoreStats.start();
+        long now = time.getGameTimeInMs();
+        BrokenBreakingBlocksComponent brokenBlocks = brokenBlocksEntity.getComponent(BrokenBreakingBlocksComponent.class);
+        if (brokenBlocks == null) {
+            nextRestoreTime = Long.MAX_VALUE;
+            restoreStats.end(startTime);
+            return;
+        }
+
+        TLongObjectMap<Map<Vector3ic, Block>> restoresByChunk = new TLongObjectHashMap<>();
+        BrokenBreakingBlocksComponent remaining = new BrokenBreakingBlocksComponent();
+        Block air = blockManager.getBlock(BlockManager.AIR_ID);
+
+        for (int i = 0; i < brokenBlocks.positions.size(); i++) {
+            Vector3i position = brokenBlocks.positions.get(i);
+            long restoreTime = brokenBlocks.restoreTimes.get(i);
+            if (restoreTime > now || !worldProvider.isBlockRelevant(position)) {
+                remaining.positions.add(position);
+                remaining.blocks.add(brokenBlocks.blocks.get(i));
+                remaining.restoreTimes.add(restoreTime);
+                continue;
             }
+
+            // Do not replace whatever was placed at the position in the meantime
+            Block block = blockManager.getBlock(brokenBlocks.blocks.get(i));
+            if (block != null && worldProvider.getBlock(position) == air) {
+                long chunkKey = TriggerBlockIndex.packPosition(
+                        Chunks.toChunkPos(position.x, Chunks.POWER_X),
+                        Chunks.toChunkPos(position.y, Chunks.POWER_Y),
+                        Chunks.toChunkPos(position.z, Chunks.POWER_Z));
+                Map<Vector3ic, Block> chunkRestores = restoresByChunk.get(chunkKey);
+                if (chunkRestores == null) {
+                    chunkRestores = new HashMap<>();
+                    restoresByChunk.put(chunkKey, chunkRestores);
+                }
+                chunkRestores.put(position, block);
+            }
+        }
+
+        nextRestoreTime = Long.MAX_VALUE;
+        for (long restoreTime : remaining.restoreTimes) {
+            nextRestoreTime = Math.min(nextRestoreTime, restoreTime);
+        }
+        brokenBlocksEntity.saveComponent(remaining);
+
+        restoresByChunk.forEachValue(chunkRestores -> {
+            worldProvider.setBlocks(chunkRestores);
+            restoreStats.count("restored blocks", chunkRestores.size());
+            restoreStats.count("chunk updates");
+            return true;
+        });
+        restoreStats.end(startTime);
+    }
+
+    private void scheduleBreak(EntityRef entity, BreakingComponent breakingComponent, long delay) {
+        breakingComponent.breakTime = time.getGameTimeInMs() + delay;
+        entity.saveComponent(breakingComponent);
+        delayManager.addDelayedAction(entity, BREAK_ACTION_ID, delay);
+    }
+
+    private long getBreakIntervalInMs(BreakingComponent breakingComponent) {
+        return TeraMath.floorToInt(breakingComponent.breakInterval * 1000);
+    }
+
+    /**
+     * A block position in the collapse frontier and the time it crumbles at.
+     */
+    private static final class CollapseStep {
+        private final int x;
+        private final int y;
+        private final int z;
+        private final long dueTime;
+        private final long sequence;
+
+        private CollapseStep(int x, int y, int z, long dueTime, long sequence) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.dueTime = dueTime;
+            this.sequence = sequence;
         }
     }
 }
@@ -19,10 +19,22 @@ public class BreakingComponent implements Component<BreakingComponent> {
     // Stores whether block is walked over
     public boolean triggered = false;
 
+    // Whether destroying this block makes the adjacent Breaking blocks crumble too
+    public boolean collapse = false;
+
+    // Time in seconds before the adjacent Breaking blocks crumble when this block is destroyed in collapse mode
+    public float collapseDelay = 0.25f;
+
+    // Time in seconds after which the block is restored once destroyed, 0 to never restore it
+    public float regenerateDelay = 0;
+
     @Override
     public void copyFrom(BreakingComponent other) {
         this.breakInterval = other.breakInterval;
         this.breakTime = other.breakTime;
         this.triggered = other.triggered;
+        this.collapse = other.collapse;
+        this.collapseDelay = other.collapseDelay;
+        this.regenerateDelay = other.regenerateDelay;
     }
 }
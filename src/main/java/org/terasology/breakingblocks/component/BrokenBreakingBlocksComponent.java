@@ -0,0 +1,36 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.breakingblocks.component;
+
+import com.google.common.collect.Lists;
+import org.joml.Vector3i;
+import org.terasology.gestalt.entitysystem.component.Component;
+
+import java.util.List;
+
+/**
+ * This component holds the destroyed Breaking blocks that are waiting to be restored.
+ * <p>
+ * It is stored on a single entity, so the restores survive saving and loading the world.
+ */
+public class BrokenBreakingBlocksComponent implements Component<BrokenBreakingBlocksComponent> {
+
+    // Positions of the destroyed blocks
+    public List<Vector3i> positions = Lists.newArrayList();
+
+    // URIs of the destroyed blocks, in the same order as positions
+    public List<String> blocks = Lists.newArrayList();
+
+    // Game times in ms at which the blocks are restored, in the same order as positions
+    public List<Long> restoreTimes = Lists.newArrayList();
+
+    @Override
+    public void copyFrom(BrokenBreakingBlocksComponent other) {
+        this.positions = Lists.newArrayList();
+        for (Vector3i position : other.positions) {
+            this.positions.add(new Vector3i(position));
+        }
+        this.blocks = Lists.newArrayList(other.blocks);
+        this.restoreTimes = Lists.newArrayList(other.restoreTimes);
+    }
+}
@@ -0,0 +1,68 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks;
+
+import org.terasology.engine.world.block.Block;
+
+import java.util.Arrays;
+
+/**
+ * A parameter per block type, kept in an array indexed by block id so that reading it is a single array access
+ * instead of a component lookup.
+ * <p>
+ * The value of a block is resolved the first time the block is seen. Use {@link FloatBlockTable} for float parameters.
+ *
+ * @param <T> The type of the parameter, resolvers must not return null.
+ */
+public class BlockTable<T> {
+
+    /**
+     * Resolves the parameter of a block type.
+     */
+    @FunctionalInterface
+    public interface Resolver<T> {
+        T resolve(Block block);
+    }
+
+    private final Resolver<T> resolver;
+    // Values by block id, null for blocks not resolved yet
+    private Object[] values = new Object[0];
+
+    public BlockTable(Resolver<T> resolver) {
+        this.resolver = resolver;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(Block block) {
+        int id = indexOf(block);
+        if (id >= values.length) {
+            values = Arrays.copyOf(values, grownLength(id, values.length));
+        }
+
+        T value = (T) values[id];
+        if (value == null) {
+            value = resolver.resolve(block);
+            values[id] = value;
+        }
+        return value;
+    }
+
+    public void clear() {
+        values = new Object[0];
+    }
+
+    /**
+     * Gets the index of a block type in the tables.
+     */
+    static int indexOf(Block block) {
+        // Block ids are unsigned shorts
+        return block.getId() & 0xFFFF;
+    }
+
+    /**
+     * Gets the length a table of the given length grows to so that it holds the given index.
+     */
+    static int grownLength(int index, int length) {
+        return Math.max(index + 1, length * 2);
+    }
+}
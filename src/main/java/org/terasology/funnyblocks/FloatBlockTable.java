@@ -0,0 +1,52 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks;
+
+import org.terasology.engine.world.block.Block;
+
+import java.util.Arrays;
+
+/**
+ * A float parameter per block type, like a {@link BlockTable} but without boxing the values.
+ * <p>
+ * The value of a block is resolved from its prefab the first time the block is seen. Blocks without the parameter
+ * resolve to 0, which the block systems treat as "does nothing".
+ */
+public class FloatBlockTable {
+
+    /**
+     * Resolves the parameter of a block type.
+     */
+    @FunctionalInterface
+    public interface Resolver {
+        float resolve(Block block);
+    }
+
+    private final Resolver resolver;
+    // Values by block id, NaN for blocks not resolved yet
+    private float[] values = new float[0];
+
+    public FloatBlockTable(Resolver resolver) {
+        this.resolver = resolver;
+    }
+
+    public float get(Block block) {
+        int id = BlockTable.indexOf(block);
+        if (id >= values.length) {
+            int oldLength = values.length;
+            values = Arrays.copyOf(values, BlockTable.grownLength(id, oldLength));
+            Arrays.fill(values, oldLength, values.length, Float.NaN);
+        }
+
+        float value = values[id];
+        if (Float.isNaN(value)) {
+            value = resolver.resolve(block);
+            values[id] = value;
+        }
+        return value;
+    }
+
+    public void clear() {
+        values = new float[0];
+    }
+}
@@ -0,0 +1,22 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks;
+
+/**
+ * Collects the runtime figures of the funny block systems, so they can be inspected on a running server.
+ */
+public interface FunnyBlocksStats {
+
+    /**
+     * Gets the figures of a handler, creating them the first time the handler is asked for.
+     *
+     * @param name The name of the handler, usually {@code System.method}.
+     * @return The figures to record the handler's runs in.
+     */
+    HandlerStats getHandlerStats(String name);
+
+    /**
+     * Clears the figures of all handlers.
+     */
+    void reset();
+}
@@ -0,0 +1,106 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks;
+
+import gnu.trove.map.TObjectLongMap;
+import gnu.trove.map.hash.TObjectLongHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Runtime figures of a single event handler or update method: how often it ran, how long it took and named counters
+ * for the work it did (entities scanned, events sent, ...).
+ * <p>
+ * Latencies are kept in a histogram with power of two buckets: bucket {@code i} counts runs that took less than
+ * {@code 2^i} microseconds, the last bucket counts everything slower.
+ */
+public class HandlerStats {
+    private static final int BUCKET_COUNT = 16;
+
+    private final String name;
+    private final long[] latencyBuckets = new long[BUCKET_COUNT];
+    private final TObjectLongMap<String> counters = new TObjectLongHashMap<>();
+    private long invocations;
+    private long totalNanos;
+    private long maxNanos;
+
+    public HandlerStats(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The start time to pass to {@link #end(long)} once the handler is done.
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records one run of the handler.
+     *
+     * @param startTime The time returned by {@link #start()} when the handler began.
+     */
+    public void end(long startTime) {
+        long nanos = System.nanoTime() - startTime;
+        invocations++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+
+        long micros = nanos / 1000;
+        int bucket = micros == 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        latencyBuckets[Math.min(bucket, BUCKET_COUNT - 1)]++;
+    }
+
+    public void count(String counter) {
+        count(counter, 1);
+    }
+
+    public void count(String counter, long amount) {
+        counters.adjustOrPutValue(counter, amount, amount);
+    }
+
+    public long getInvocations() {
+        return invocations;
+    }
+
+    public long getCounter(String counter) {
+        return counters.get(counter);
+    }
+
+    public void reset() {
+        Arrays.fill(latencyBuckets, 0);
+        counters.clear();
+        invocations = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(name).append(": ").append(invocations).append(" calls");
+        if (invocations > 0) {
+            result.append(String.format(", avg %.1fus, max %.1fus", totalNanos / 1000.0 / invocations, maxNanos / 1000.0));
+        }
+
+        String[] counterNames = counters.keys(new String[counters.size()]);
+        Arrays.sort(counterNames);
+        for (String counter : counterNames) {
+            result.append(", ").append(counter).append(' ').append(counters.get(counter));
+        }
+
+        if (invocations > 0) {
+            result.append("\n  latency:");
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                if (latencyBuckets[i] > 0) {
+                    result.append(i < BUCKET_COUNT - 1 ? " <" + (1L << i) + "us=" : " >=" + (1L << (i - 1)) + "us=")
+                            .append(latencyBuckets[i]);
+                }
+            }
+        }
+        return result.toString();
+    }
+}
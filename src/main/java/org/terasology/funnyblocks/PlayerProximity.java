@@ -0,0 +1,24 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks;
+
+/**
+ * Tells whether a position is close to any player, so systems can update distant entities less often.
+ */
+public interface PlayerProximity {
+
+    /**
+     * Distance in blocks within which entities are considered near a player.
+     */
+    float NEAR_DISTANCE = 48;
+
+    /**
+     * Checks whether a position is within {@link #NEAR_DISTANCE} of any player's character.
+     *
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     * @param z The z coordinate of the position.
+     * @return Whether a player is near.
+     */
+    boolean isNearPlayer(float x, float y, float z);
+}
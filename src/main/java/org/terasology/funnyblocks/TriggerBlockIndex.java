@@ -0,0 +1,60 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.world.block.Block;
+
+/**
+ * Keeps track of where the funny trigger blocks (bouncy, breaking, speed boost, ...) are in the world.
+ * <p>
+ * Systems use this to find the block under a character in constant time instead of iterating over every trigger block entity.
+ */
+public interface TriggerBlockIndex {
+
+    /**
+     * Looks up the trigger block at a block position.
+     *
+     * @param x The x coordinate of the block.
+     * @param y The y coordinate of the block.
+     * @param z The z coordinate of the block.
+     * @return The block entity at that position, or {@link EntityRef#NULL} if there is no trigger block there.
+     */
+    EntityRef getTriggerBlockAt(int x, int y, int z);
+
+    /**
+     * Looks up the type of the trigger block at a block position.
+     *
+     * @param x The x coordinate of the block.
+     * @param y The y coordinate of the block.
+     * @param z The z coordinate of the block.
+     * @return The block at that position, or null if there is no trigger block there.
+     */
+    Block getTriggerBlockTypeAt(int x, int y, int z);
+
+    /**
+     * @return The number of trigger blocks currently tracked.
+     */
+    int size();
+
+    /**
+     * Packs a block position into a single long, using 21 bits per axis.
+     */
+    static long packPosition(int x, int y, int z) {
+        return ((long) x & 0x1FFFFF) << 42 | ((long) y & 0x1FFFFF) << 21 | ((long) z & 0x1FFFFF);
+    }
+
+    // Each unpack shifts its 21 bit coordinate to the top of the long and back to restore its sign
+
+    static int unpackX(long key) {
+        return (int) ((key << 1) >> 43);
+    }
+
+    static int unpackY(long key) {
+        return (int) ((key << 22) >> 43);
+    }
+
+    static int unpackZ(long key) {
+        return (int) ((key << 43) >> 43);
+    }
+}
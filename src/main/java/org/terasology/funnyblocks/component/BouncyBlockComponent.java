@@ -10,8 +10,13 @@ import org.terasology.gestalt.entitysystem.component.Component;
 public class BouncyBlockComponent implements Component<BouncyBlockComponent> {
     public float force = 20;
 
+    // Time in seconds after a bounce before a character still standing on the block bounces again,
+    // 0 to only bounce once per landing
+    public float rearmCooldown = 0;
+
     @Override
     public void copyFrom(BouncyBlockComponent other) {
         this.force = other.force;
+        this.rearmCooldown = other.rearmCooldown;
     }
 }
@@ -0,0 +1,58 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks.event;
+
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.world.block.Block;
+import org.terasology.gestalt.entitysystem.event.Event;
+
+/**
+ * Sent to a character for every movement input while it is standing on a trigger block, and for each trigger block it
+ * passed over since its previous movement input, in the order they were crossed.
+ * <p>
+ * {@link #isFirstStep()} tells whether the character has just moved onto this block, so systems that should only react
+ * once per block (e.g. portals) do not have to track the character's position themselves.
+ */
+public class OnSteppedOnBlockEvent implements Event {
+    private final Vector3i blockPosition = new Vector3i();
+    private EntityRef blockEntity;
+    private Block block;
+    private boolean firstStep;
+
+    public OnSteppedOnBlockEvent(Vector3ic blockPosition, EntityRef blockEntity, Block block, boolean firstStep) {
+        this.blockPosition.set(blockPosition);
+        this.blockEntity = blockEntity;
+        this.block = block;
+        this.firstStep = firstStep;
+    }
+
+    /**
+     * @return The position of the block under the character.
+     */
+    public Vector3ic getBlockPosition() {
+        return blockPosition;
+    }
+
+    /**
+     * @return The entity of the block under the character.
+     */
+    public EntityRef getBlockEntity() {
+        return blockEntity;
+    }
+
+    /**
+     * @return The type of the block under the character, to look up parameters that are the same for every block of a type.
+     */
+    public Block getBlock() {
+        return block;
+    }
+
+    /**
+     * @return Whether the block under the character changed with this movement input.
+     */
+    public boolean isFirstStep() {
+        return firstStep;
+    }
+}
@@ -0,0 +1,357 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks.system;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.joml.Vector3f;
+import org.joml.Vector3i;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
+import org.terasology.engine.logic.characters.CharacterMoveInputEvent;
+import org.terasology.engine.logic.characters.CharacterMovementComponent;
+import org.terasology.engine.logic.characters.CharacterTeleportEvent;
+import org.terasology.engine.logic.location.LocationComponent;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.world.block.Block;
+import org.terasology.funnyblocks.FunnyBlocksStats;
+import org.terasology.funnyblocks.HandlerStats;
+import org.terasology.funnyblocks.TriggerBlockIndex;
+import org.terasology.funnyblocks.event.OnSteppedOnBlockEvent;
+import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Resolves the block under each moving character for every movement input and sends an {@link OnSteppedOnBlockEvent}
+ * to the character when that block is a trigger block.
+ * <p>
+ * The block systems listen for that event instead of each handling {@link CharacterMoveInputEvent} themselves.
+ * <p>
+ * Trigger blocks the character passed over between two movement inputs are sent too, in the order they were crossed,
+ * so fast or lagging characters whose inputs arrive far apart do not skip over boost pads or portals.
+ * <p>
+ * The movement inputs of a tick are collected and resolved together in {@link #update(float)}: the lookups only read
+ * the {@link TriggerBlockIndex}, so with many inputs they run in parallel, and the events are then sent on the main
+ * thread, ordered by character and by input.
+ * <p>
+ * Movement inputs are recorded into pooled samples and scratch vectors, so in steady state handling an input does not
+ * allocate; only the events sent for trigger blocks are new objects.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+public class BlockUnderCharacterSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
+
+    // Packed positions only use the lower 63 bits, so this never matches a real block
+    private static final long NO_BLOCK = -1L;
+    // Characters moving further than this between two inputs were teleported, so the blocks in between are not crossed
+    private static final float MAX_CROSSED_DISTANCE = 16;
+    // Number of movement inputs in a tick from which they are resolved in parallel
+    private static final int PARALLEL_THRESHOLD = 64;
+    private static final Comparator<MoveSample> BY_CHARACTER = Comparator.comparingLong(sample -> sample.character.getId());
+
+    // Packed position of the block each character was last standing on, by character entity id
+    private final TLongLongMap lastBlockUnderCharacter =
+            new TLongLongHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, 0L, NO_BLOCK);
+    // Position of each character at its last movement input, by character entity id
+    private final TLongObjectMap<Vector3f> lastPositionOfCharacter = new TLongObjectHashMap<>();
+    // Movement inputs received this tick, in the order they arrived
+    private final List<MoveSample> pendingMoves = new ArrayList<>();
+    // Samples of previous ticks, reused for the inputs of the next ones
+    private final Deque<MoveSample> samplePool = new ArrayDeque<>();
+
+    // Scratch state reused on the main thread
+    private final Vector3f characterPosition = new Vector3f();
+    private final Vector3i eventPosition = new Vector3i();
+
+    @In
+    private TriggerBlockIndex triggerBlockIndex;
+
+    @In
+    private FunnyBlocksStats stats;
+
+    private HandlerStats moveStats;
+    private HandlerStats updateStats;
+
+    @Override
+    public void initialise() {
+        moveStats = stats.getHandlerStats("BlockUnderCharacterSystem.onCharacterMove");
+        updateStats = stats.getHandlerStats("BlockUnderCharacterSystem.update");
+    }
+
+    /**
+     * This is called when the character is moving.
+     *
+     * @param moveInputEvent The details of the movement.
+     * @param character The character entity.
+     * @param location The character's location.
+     */
+    @ReceiveEvent(components = {LocationComponent.class, CharacterMovementComponent.class})
+    public void onCharacterMove(CharacterMoveInputEvent moveInputEvent, EntityRef character, LocationComponent location) {
+        long startTime = moveStats.start();
+        Vector3f characterWorldLocation = location.getWorldPosition(characterPosition);
+
+        MoveSample sample = samplePool.isEmpty() ? new MoveSample() : samplePool.poll();
+        sample.character = character;
+        sample.to.set(characterWorldLocation);
+
+        Vector3f lastPosition = lastPositionOfCharacter.get(character.getId());
+        sample.crossing = false;
+        if (lastPosition == null) {
+            lastPositionOfCharacter.put(character.getId(), new Vector3f(characterWorldLocation));
+        } else {
+            if (lastPosition.distanceSquared(characterWorldLocation) <= MAX_CROSSED_DISTANCE * MAX_CROSSED_DISTANCE) {
+                sample.from.set(lastPosition);
+                sample.crossing = true;
+            }
+            lastPosition.set(characterWorldLocation);
+        }
+
+        pendingMoves.add(sample);
+        moveStats.end(startTime);
+    }
+
+    /**
+     * Resolves the movement inputs of this tick and sends the resulting events.
+     *
+     * @param delta The time since the last update.
+     */
+    @Override
+    public void update(float delta) {
+        if (pendingMoves.isEmpty()) {
+            return;
+        }
+
+        long startTime = updateStats.start();
+
+        // The index is only changed by event handlers on the main thread, which waits here, so it can be read in parallel
+        if (pendingMoves.size() >= PARALLEL_THRESHOLD) {
+            pendingMoves.parallelStream().forEach(this::resolve);
+            updateStats.count("parallel batches");
+        } else {
+            for (int i = 0; i < pendingMoves.size(); i++) {
+                resolve(pendingMoves.get(i));
+            }
+        }
+
+        // The sort is stable, so the inputs of each character keep their order
+        pendingMoves.sort(BY_CHARACTER);
+
+        for (int i = 0; i < pendingMoves.size(); i++) {
+            MoveSample sample = pendingMoves.get(i);
+            // The inputs of a character from before it was teleported no longer match where it is
+            if (!sample.stale) {
+                apply(sample);
+            }
+            sample.clear();
+            samplePool.push(sample);
+        }
+
+        updateStats.count("movement inputs", pendingMoves.size());
+        pendingMoves.clear();
+        updateStats.end(startTime);
+    }
+
+    /**
+     * Looks up the trigger blocks under a movement input, without changing any state.
+     */
+    private void resolve(MoveSample sample) {
+        Vector3f to = sample.to;
+        if (sample.crossing) {
+            collectCrossedCells(sample.from, to, sample.crossedCells);
+            for (int i = 0; i < sample.crossedCells.size(); i++) {
+                long key = sample.crossedCells.get(i);
+                int x = TriggerBlockIndex.unpackX(key);
+                int y = TriggerBlockIndex.unpackY(key);
+                int z = TriggerBlockIndex.unpackZ(key);
+                EntityRef blockEntity = triggerBlockIndex.getTriggerBlockAt(x, y, z);
+                if (blockEntity != EntityRef.NULL) {
+                    sample.crossedPositions.add(key);
+                    sample.crossedBlocks.add(blockEntity);
+                    sample.crossedBlockTypes.add(triggerBlockIndex.getTriggerBlockTypeAt(x, y, z));
+                }
+            }
+        }
+
+        sample.x = Math.round(to.x);
+        sample.y = Math.round(to.y - 1);
+        sample.z = Math.round(to.z);
+        sample.blockEntity = triggerBlockIndex.getTriggerBlockAt(sample.x, sample.y, sample.z);
+        sample.blockType = triggerBlockIndex.getTriggerBlockTypeAt(sample.x, sample.y, sample.z);
+    }
+
+    /**
+     * Sends the events of a resolved movement input, stopping as soon as one of them teleports the character.
+     */
+    private void apply(MoveSample sample) {
+        EntityRef character = sample.character;
+        for (int i = 0; i < sample.crossedBlocks.size(); i++) {
+            EntityRef blockEntity = sample.crossedBlocks.get(i);
+            if (blockEntity.exists()) {
+                long key = sample.crossedPositions.get(i);
+                // The event copies the position, so the scratch vector can be reused
+                eventPosition.set(TriggerBlockIndex.unpackX(key), TriggerBlockIndex.unpackY(key), TriggerBlockIndex.unpackZ(key));
+                character.send(new OnSteppedOnBlockEvent(eventPosition, blockEntity, sample.crossedBlockTypes.get(i), true));
+                updateStats.count("crossed block events");
+                if (sample.stale) {
+                    return;
+                }
+            }
+        }
+
+        long blockUnder = TriggerBlockIndex.packPosition(sample.x, sample.y, sample.z);
+        // Each character is tracked on its own, so other characters moving do not hide or fake a block change
+        boolean firstStep = lastBlockUnderCharacter.put(character.getId(), blockUnder) != blockUnder;
+
+        if (sample.blockEntity.exists()) {
+            character.send(new OnSteppedOnBlockEvent(eventPosition.set(sample.x, sample.y, sample.z),
+                    sample.blockEntity, sample.blockType, firstStep));
+            updateStats.count("stepped on block events");
+        }
+    }
+
+    /**
+     * Forgets where a teleported character was (e.g. by a portal), so the blocks between its old and new position are
+     * not crossed, and drops its inputs of this tick that were not handled yet, as they are from before the teleport.
+     */
+    @ReceiveEvent(components = {CharacterMovementComponent.class})
+    public void onCharacterTeleport(CharacterTeleportEvent event, EntityRef character) {
+        long characterId = character.getId();
+        lastPositionOfCharacter.remove(characterId);
+        lastBlockUnderCharacter.put(characterId, NO_BLOCK);
+        for (int i = 0; i < pendingMoves.size(); i++) {
+            MoveSample sample = pendingMoves.get(i);
+            if (sample.character.getId() == characterId) {
+                sample.stale = true;
+            }
+        }
+    }
+
+    /**
+     * Collects each block under the path of a character between two movement inputs, leaving out the blocks under both
+     * ends, which are handled with the inputs themselves.
+     * <p>
+     * The columns are walked one at a time along the line between both positions on the ground, in the order the
+     * character crossed them. Where the character could have stood in a column is only known at both ends, so each
+     * column is checked at the heights of the blocks under both ends, never in between: a character stepping up or down
+     * does not pass through the blocks below the step.
+     *
+     * @param from The character's position at its previous input.
+     * @param to The character's position at this input.
+     * @param dest Will get the packed positions of the crossed blocks added.
+     */
+    static void collectCrossedCells(Vector3f from, Vector3f to, TLongList dest) {
+        // The block under a position is found by rounding, so walk the cells of the shifted line
+        float startX = from.x + 0.5f;
+        float startZ = from.z + 0.5f;
+        float dx = to.x - from.x;
+        float dz = to.z - from.z;
+
+        int x = (int) Math.floor(startX);
+        int z = (int) Math.floor(startZ);
+        int fromY = Math.round(from.y - 1);
+        int endX = Math.round(to.x);
+        int endY = Math.round(to.y - 1);
+        int endZ = Math.round(to.z);
+
+        int stepX = dx > 0 ? 1 : -1;
+        int stepZ = dz > 0 ? 1 : -1;
+        float deltaX = dx != 0 ? Math.abs(1 / dx) : Float.POSITIVE_INFINITY;
+        float deltaZ = dz != 0 ? Math.abs(1 / dz) : Float.POSITIVE_INFINITY;
+        // Fraction of the path at which the next cell boundary of each axis is reached
+        float nextX = dx != 0 ? (dx > 0 ? x + 1 - startX : startX - x) * deltaX : Float.POSITIVE_INFINITY;
+        float nextZ = dz != 0 ? (dz > 0 ? z + 1 - startZ : startZ - z) * deltaZ : Float.POSITIVE_INFINITY;
+
+        while (true) {
+            if (nextX <= nextZ) {
+                if (nextX > 1) {
+                    return;
+                }
+                x += stepX;
+                nextX += deltaX;
+            } else {
+                if (nextZ > 1) {
+                    return;
+                }
+                z += stepZ;
+                nextZ += deltaZ;
+            }
+
+            if (x == endX && z == endZ) {
+                return;
+            }
+            dest.add(TriggerBlockIndex.packPosition(x, fromY, z));
+            if (endY != fromY) {
+                dest.add(TriggerBlockIndex.packPosition(x, endY, z));
+            }
+        }
+    }
+
+    @ReceiveEvent(components = {CharacterMovementComponent.class})
+    public void onCharacterDeactivated(BeforeDeactivateComponent event, EntityRef character) {
+        lastBlockUnderCharacter.remove(character.getId());
+        lastPositionOfCharacter.remove(character.getId());
+    }
+
+    /**
+     * @return The number of samples waiting to be reused, to check that steady movement does not create new ones.
+     */
+    int getPooledSampleCount() {
+        return samplePool.size();
+    }
+
+    @Override
+    public void shutdown() {
+        lastBlockUnderCharacter.clear();
+        lastPositionOfCharacter.clear();
+        pendingMoves.clear();
+        samplePool.clear();
+    }
+
+    /**
+     * A movement input of a character and the trigger blocks found under it. Samples are pooled and reused.
+     */
+    private static final class MoveSample {
+        private EntityRef character = EntityRef.NULL;
+        // Position at the previous input, only used if the blocks in between are crossed
+        private final Vector3f from = new Vector3f();
+        private final Vector3f to = new Vector3f();
+        private boolean crossing;
+        // Set once the character was teleported after this input
+        private boolean stale;
+
+        // Packed positions of the blocks crossed since the previous input, and of the trigger blocks among them
+        private final TLongList crossedCells = new TLongArrayList();
+        private final TLongList crossedPositions = new TLongArrayList();
+        private final List<EntityRef> crossedBlocks = new ArrayList<>();
+        private final List<Block> crossedBlockTypes = new ArrayList<>();
+        private int x;
+        private int y;
+        private int z;
+        private EntityRef blockEntity = EntityRef.NULL;
+        private Block blockType;
+
+        private void clear() {
+            character = EntityRef.NULL;
+            stale = false;
+            crossedCells.resetQuick();
+            crossedPositions.resetQuick();
+            crossedBlocks.clear();
+            crossedBlockTypes.clear();
+            blockEntity = EntityRef.NULL;
+            blockType = null;
+        }
+    }
+}
@@ -15,26 +15,38 @@
  */
 package org.terasology.funnyblocks.system;
 
+import gnu.trove.impl.Constants;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TLongLongHashMap;
 import org.joml.Vector3f;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terasology.engine.core.Time;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
 import org.terasology.engine.logic.characters.CharacterImpulseEvent;
-import org.terasology.engine.logic.characters.CharacterMoveInputEvent;
-import org.terasology.engine.logic.location.LocationComponent;
+import org.terasology.engine.logic.characters.CharacterMovementComponent;
 import org.terasology.engine.registry.In;
 import org.terasology.engine.world.BlockEntityRegistry;
 import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+import org.terasology.funnyblocks.FloatBlockTable;
+import org.terasology.funnyblocks.FunnyBlocksStats;
+import org.terasology.funnyblocks.HandlerStats;
 import org.terasology.funnyblocks.component.BouncyBlockComponent;
+import org.terasology.funnyblocks.event.OnSteppedOnBlockEvent;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+import org.terasology.math.TeraMath;
 
 @RegisterSystem(RegisterMode.AUTHORITY)
 public class BouncySystem extends BaseComponentSystem {
+    // Last bounce time of characters that have not bounced yet, far enough in the past for any cooldown
+    private static final long NEVER_BOUNCED = Long.MIN_VALUE / 2;
+
     @In
     private BlockEntityRegistry blockEntityProvider;
 
@@ -47,20 +59,93 @@ public class BouncySystem extends BaseComponentSystem {
     @In
     private WorldProvider worldProvider;
 
+    @In
+    private FunnyBlocksStats stats;
+
     private final Logger logger = LoggerFactory.getLogger(BouncySystem.class);
 
-    @ReceiveEvent(components = {LocationComponent.class})
-    public void onCharacterMovement(CharacterMoveInputEvent event, EntityRef player) {
+    private HandlerStats steppedOnBlockStats;
+
+    // Bounce parameters of each block type, 0 for blocks that are not bouncy
+    private final FloatBlockTable forceByBlock = new FloatBlockTable(block -> {
+        BouncyBlockComponent bouncyBlock = getBouncyBlock(block);
+        return bouncyBlock != null ? bouncyBlock.force : 0;
+    });
+    private final FloatBlockTable rearmCooldownByBlock = new FloatBlockTable(block -> {
+        BouncyBlockComponent bouncyBlock = getBouncyBlock(block);
+        return bouncyBlock != null ? bouncyBlock.rearmCooldown : 0;
+    });
 
-        Vector3f playerPosition = player.getComponent(LocationComponent.class).getWorldPosition(new Vector3f());
-        for (EntityRef blockEntity : entityManager.getEntitiesWith(BouncyBlockComponent.class,
-            LocationComponent.class)) {
-            Vector3f blockPos = blockEntity.getComponent(LocationComponent.class).getWorldPosition(new Vector3f());
-            if (Math.round(playerPosition.x) == blockPos.x && Math.round(playerPosition.z) == blockPos.z
-                && Math.round(playerPosition.y - 1) == blockPos.y) {
-                Vector3f impulse = new Vector3f(0, blockEntity.getComponent(BouncyBlockComponent.class).force, 0);
+    // Game time in ms of the last bounce of each character, by character entity id
+    private final TLongLongMap lastBounceTimes =
+            new TLongLongHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, 0L, NEVER_BOUNCED);
+
+    @Override
+    public void initialise() {
+        steppedOnBlockStats = stats.getHandlerStats("BouncySystem.onSteppedOnBlock");
+    }
+
+    /**
+     * Bounces the player once when they land on a bouncy block, and again after the block's re-arm cooldown if they
+     * are still standing on it.
+     *
+     * @param event The details of the block underneath the player.
+     * @param player The player entity.
+     */
+    @ReceiveEvent
+    public void onSteppedOnBlock(OnSteppedOnBlockEvent event, EntityRef player) {
+        long startTime = steppedOnBlockStats.start();
+        float force = forceByBlock.get(event.getBlock());
+        if (force != 0) {
+            long now = time.getGameTimeInMs();
+            float rearmCooldown = rearmCooldownByBlock.get(event.getBlock());
+            if (isArmed(rearmCooldown, event.isFirstStep(), now, lastBounceTimes.get(player.getId()))) {
+                Vector3f impulse = new Vector3f(0, force, 0);
                 player.send(new CharacterImpulseEvent(impulse));
+                lastBounceTimes.put(player.getId(), now);
+                steppedOnBlockStats.count("impulses");
+            } else {
+                steppedOnBlockStats.count("skipped impulses");
             }
         }
+        steppedOnBlockStats.end(startTime);
+    }
+
+    /**
+     * Decides whether a character standing on a bouncy block bounces.
+     *
+     * @param rearmCooldown The bouncy block's re-arm cooldown in seconds.
+     * @param firstStep Whether the character has just landed on the block.
+     * @param now The current game time in ms.
+     * @param lastBounceTime The game time in ms of the character's last bounce.
+     * @return Whether the character bounces.
+     */
+    static boolean isArmed(float rearmCooldown, boolean firstStep, long now, long lastBounceTime) {
+        if (rearmCooldown > 0) {
+            return now - lastBounceTime >= TeraMath.floorToInt(rearmCooldown * 1000);
+        }
+        return firstStep;
+    }
+
+    /**
+     * Gets the bouncy properties every block of a type starts with.
+     *
+     * @param block The block type.
+     * @return The properties from the block's prefab, or null if the block is not bouncy.
+     */
+    private static BouncyBlockComponent getBouncyBlock(Block block) {
+        return block.getPrefab().map(prefab -> prefab.getComponent(BouncyBlockComponent.class)).orElse(null);
+    }
+
+    @ReceiveEvent(components = {CharacterMovementComponent.class})
+    public void onCharacterDeactivated(BeforeDeactivateComponent event, EntityRef character) {
+        lastBounceTimes.remove(character.getId());
+    }
+
+    @Override
+    public void shutdown() {
+        lastBounceTimes.clear();
+        forceByBlock.clear();
+        rearmCooldownByBlock.clear();
     }
 }
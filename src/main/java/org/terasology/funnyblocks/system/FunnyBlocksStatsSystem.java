@@ -0,0 +1,51 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks.system;
+
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.permission.PermissionManager;
+import org.terasology.engine.registry.Share;
+import org.terasology.funnyblocks.FunnyBlocksStats;
+import org.terasology.funnyblocks.HandlerStats;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the {@link HandlerStats} of all funny block systems and provides console commands to show and reset them.
+ */
+@RegisterSystem
+@Share(FunnyBlocksStats.class)
+public class FunnyBlocksStatsSystem extends BaseComponentSystem implements FunnyBlocksStats {
+
+    private final Map<String, HandlerStats> handlerStats = new TreeMap<>();
+
+    @Override
+    public HandlerStats getHandlerStats(String name) {
+        return handlerStats.computeIfAbsent(name, HandlerStats::new);
+    }
+
+    @Override
+    public void reset() {
+        handlerStats.values().forEach(HandlerStats::reset);
+    }
+
+    @Command(shortDescription = "Shows call counts, latencies and sent events of the funny block systems",
+            runOnServer = true, requiredPermission = PermissionManager.DEBUG_PERMISSION)
+    public String funnyBlocksStats() {
+        StringBuilder result = new StringBuilder();
+        for (HandlerStats stats : handlerStats.values()) {
+            result.append(stats).append('\n');
+        }
+        return result.toString();
+    }
+
+    @Command(shortDescription = "Resets the figures shown by funnyBlocksStats",
+            runOnServer = true, requiredPermission = PermissionManager.DEBUG_PERMISSION)
+    public String funnyBlocksStatsReset() {
+        reset();
+        return "Funny block stats reset";
+    }
+}
@@ -0,0 +1,81 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks.system;
+
+import org.joml.Vector3f;
+import org.terasology.engine.core.Time;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.logic.location.LocationComponent;
+import org.terasology.engine.network.ClientComponent;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
+import org.terasology.funnyblocks.PlayerProximity;
+
+import java.util.Arrays;
+
+/**
+ * Implements {@link PlayerProximity} from the positions of the players' characters.
+ * <p>
+ * The positions are gathered at most once per game tick, the first time a system asks, so every check during a tick is
+ * a loop over a small array.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+@Share(PlayerProximity.class)
+public class PlayerProximitySystem extends BaseComponentSystem implements PlayerProximity {
+
+    @In
+    private EntityManager entityManager;
+
+    @In
+    private Time time;
+
+    // Positions of the players' characters as x, y, z triples
+    private float[] playerPositions = new float[0];
+    private int playerCount;
+    private long positionsTime = -1;
+    private final Vector3f position = new Vector3f();
+
+    @Override
+    public boolean isNearPlayer(float x, float y, float z) {
+        refreshPositions();
+        for (int i = 0; i < playerCount * 3; i += 3) {
+            float dx = playerPositions[i] - x;
+            float dy = playerPositions[i + 1] - y;
+            float dz = playerPositions[i + 2] - z;
+            if (dx * dx + dy * dy + dz * dz <= NEAR_DISTANCE * NEAR_DISTANCE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void refreshPositions() {
+        long now = time.getGameTimeInMs();
+        if (now == positionsTime) {
+            return;
+        }
+        positionsTime = now;
+
+        playerCount = 0;
+        for (EntityRef client : entityManager.getEntitiesWith(ClientComponent.class)) {
+            EntityRef character = client.getComponent(ClientComponent.class).character;
+            LocationComponent location = character.getComponent(LocationComponent.class);
+            if (location == null) {
+                continue;
+            }
+
+            if (playerCount * 3 == playerPositions.length) {
+                playerPositions = Arrays.copyOf(playerPositions, Math.max(3, playerPositions.length * 2));
+            }
+            location.getWorldPosition(position);
+            playerPositions[playerCount * 3] = position.x;
+            playerPositions[playerCount * 3 + 1] = position.y;
+            playerPositions[playerCount * 3 + 2] = position.z;
+            playerCount++;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks.system;
+
+import com.google.common.collect.ImmutableList;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.joml.Vector3ic;
+import org.terasology.breakingblocks.component.BreakingComponent;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnChangedComponent;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.registry.Share;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockComponent;
+import org.terasology.funnyblocks.TriggerBlockIndex;
+import org.terasology.funnyblocks.component.BouncyBlockComponent;
+import org.terasology.gestalt.entitysystem.component.Component;
+import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+import org.terasology.portalblocks.component.BluePortalComponent;
+import org.terasology.portalblocks.component.OrangePortalComponent;
+import org.terasology.speedboostblocks.component.SpeedBoostComponent;
+
+import java.util.List;
+
+/**
+ * Maintains the {@link TriggerBlockIndex} by following the lifecycle of block entities.
+ * <p>
+ * Block entities are added when they become active, moved when their {@link BlockComponent} changes (e.g. the block at
+ * that position is replaced) and dropped before they are deactivated.
+ * Following activation is enough to keep the index to the blocks around players: block entities leave it when they are
+ * deactivated, and block entities that stay active (e.g. {@code keepActive} blocks) must stay in it, as they are not
+ * activated again when their chunk is reloaded.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+@Share(TriggerBlockIndex.class)
+public class TriggerBlockIndexSystem extends BaseComponentSystem implements TriggerBlockIndex {
+
+    private static final List<Class<? extends Component>> TRIGGER_COMPONENTS = ImmutableList.of(
+            BouncyBlockComponent.class,
+            BreakingComponent.class,
+            SpeedBoostComponent.class,
+            BluePortalComponent.class,
+            OrangePortalComponent.class);
+
+    private final TLongObjectMap<EntityRef> blocksByPosition = new TLongObjectHashMap<>();
+    private final TLongObjectMap<Block> blockTypesByPosition = new TLongObjectHashMap<>();
+    private final TLongLongMap positionsByEntity = new TLongLongHashMap();
+
+    @Override
+    public EntityRef getTriggerBlockAt(int x, int y, int z) {
+        EntityRef entity = blocksByPosition.get(TriggerBlockIndex.packPosition(x, y, z));
+        return entity != null ? entity : EntityRef.NULL;
+    }
+
+    @Override
+    public Block getTriggerBlockTypeAt(int x, int y, int z) {
+        return blockTypesByPosition.get(TriggerBlockIndex.packPosition(x, y, z));
+    }
+
+    @Override
+    public int size() {
+        return blocksByPosition.size();
+    }
+
+    @ReceiveEvent(components = {BlockComponent.class})
+    public void onBlockActivated(OnActivatedComponent event, EntityRef entity, BlockComponent blockComponent) {
+        track(entity, blockComponent);
+    }
+
+    @ReceiveEvent(components = {BlockComponent.class})
+    public void onBlockChanged(OnChangedComponent event, EntityRef entity, BlockComponent blockComponent) {
+        // The block at this position may have been replaced by one with different components, so index it again
+        untrack(entity);
+        track(entity, blockComponent);
+    }
+
+    @ReceiveEvent(components = {BlockComponent.class})
+    public void onBlockDeactivated(BeforeDeactivateComponent event, EntityRef entity) {
+        untrack(entity);
+    }
+
+    @Override
+    public void shutdown() {
+        blocksByPosition.clear();
+        blockTypesByPosition.clear();
+        positionsByEntity.clear();
+    }
+
+    private void track(EntityRef entity, BlockComponent blockComponent) {
+        if (!isTriggerBlock(entity)) {
+            return;
+        }
+
+        Vector3ic position = blockComponent.getPosition();
+        long key = TriggerBlockIndex.packPosition(position.x(), position.y(), position.z());
+        blocksByPosition.put(key, entity);
+        blockTypesByPosition.put(key, blockComponent.getBlock());
+        positionsByEntity.put(entity.getId(), key);
+    }
+
+    private void untrack(EntityRef entity) {
+        if (!positionsByEntity.containsKey(entity.getId())) {
+            return;
+        }
+
+        long key = positionsByEntity.remove(entity.getId());
+        // Only drop the position if it was not already claimed by another block entity
+        if (entity.equals(blocksByPosition.get(key))) {
+            blocksByPosition.remove(key);
+            blockTypesByPosition.remove(key);
+        }
+    }
+
+    private boolean isTriggerBlock(EntityRef entity) {
+        for (Class<? extends Component> triggerComponent : TRIGGER_COMPONENTS) {
+            if (entity.hasComponent(triggerComponent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
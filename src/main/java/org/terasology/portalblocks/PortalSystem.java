@@ -15,8 +15,14 @@
  */
 package org.terasology.portalblocks;
 
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import org.joml.Vector3f;
+import org.joml.Vector3fc;
 import org.joml.Vector3i;
+import org.joml.Vector3ic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terasology.engine.core.Time;
@@ -25,29 +31,37 @@ import org.terasology.engine.entitySystem.entity.EntityRef;
 import org.terasology.engine.entitySystem.prefab.PrefabManager;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
-import org.terasology.engine.logic.characters.CharacterMoveInputEvent;
 import org.terasology.engine.logic.characters.CharacterMovementComponent;
 import org.terasology.engine.logic.characters.CharacterTeleportEvent;
 import org.terasology.engine.logic.common.ActivateEvent;
 import org.terasology.engine.logic.health.DestroyEvent;
-import org.terasology.engine.logic.location.LocationComponent;
 import org.terasology.engine.logic.notifications.NotificationMessageEvent;
 import org.terasology.engine.registry.In;
 import org.terasology.engine.world.BlockEntityRegistry;
+import org.terasology.engine.world.OnChangedBlock;
 import org.terasology.engine.world.WorldProvider;
 import org.terasology.engine.world.block.Block;
 import org.terasology.engine.world.block.BlockComponent;
+import org.terasology.funnyblocks.FunnyBlocksStats;
+import org.terasology.funnyblocks.HandlerStats;
+import org.terasology.funnyblocks.TriggerBlockIndex;
+import org.terasology.funnyblocks.event.OnSteppedOnBlockEvent;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 import org.terasology.portalblocks.component.ActivePortalComponent;
 import org.terasology.portalblocks.component.ActivePortalPairComponent;
 import org.terasology.portalblocks.component.BluePortalComponent;
 import org.terasology.portalblocks.component.OrangePortalComponent;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * This class manages and controls Portal blocks.
  * <p>Portal Blocks allow you to teleport from A to B.</p>
  * <p>There are two types of Portal blocks- blue and orange.
- * Only one of each can remain activated at once resulting in a discrete pathway.</p>
+ * Only one of each can remain activated at once per channel resulting in a discrete pathway.
+ * Portal blocks are put on a channel through the {@code channel} field of their portal component, so any number
+ * of pathways can exist at the same time.</p>
  */
 
 @RegisterSystem
@@ -55,9 +69,18 @@ public class PortalSystem extends BaseComponentSystem {
 
     private static final Logger logger = LoggerFactory.getLogger(PortalSystem.class);
 
-    // Global entity which contains ActivePortalPairComponent and has locations of activated Portals
-    private EntityRef activatedPortals = EntityRef.NULL;
-    private Vector3i oldPosition;
+    // Cached for portals without space around them, so they are not searched again either
+    static final Vector3fc NO_LANDING_SPOT = new Vector3f(Float.NaN);
+
+    // Entities which contain an ActivePortalPairComponent with the locations of the activated Portals, by channel
+    private final Map<String, EntityRef> activatedPortals = new HashMap<>();
+
+    // Location of the linked Portal for every activated Portal, by packed position
+    private final TLongObjectMap<Vector3i> portalDestinations = new TLongObjectHashMap<>();
+
+    // Spot next to each portal where characters land, by packed portal position and character height in blocks
+    private final TLongObjectMap<TIntObjectMap<Vector3fc>> landingSpots = new TLongObjectHashMap<>();
+    private int maxCachedHeight;
 
     @In
     private EntityManager entityManager;
@@ -74,85 +97,176 @@ public class PortalSystem extends BaseComponentSystem {
     @In
     private Time time;
 
+    @In
+    private FunnyBlocksStats stats;
+
+    private HandlerStats steppedOnBlockStats;
+
+    @Override
+    public void initialise() {
+        steppedOnBlockStats = stats.getHandlerStats("PortalSystem.onSteppedOnBlock");
+    }
+
     /**
-     * This is called when the character is moving.
+     * This is called when the character is standing on a trigger block.
      *
-     * @param moveInputEvent The details of the movement.
-     * @param player         The player entity.
-     * @param location       The player's location.
+     * @param event  The details of the block under the player.
+     * @param player The player entity.
      */
-    @ReceiveEvent(components = {LocationComponent.class, CharacterMovementComponent.class})
-    public void onCharacterMove(CharacterMoveInputEvent moveInputEvent, EntityRef player, LocationComponent location) {
-
-        // Get the player's location
-        Vector3f playerWorldLocation = location.getWorldPosition(new Vector3f());
+    @ReceiveEvent(components = {CharacterMovementComponent.class})
+    public void onSteppedOnBlock(OnSteppedOnBlockEvent event, EntityRef player) {
 
-        // If it doesn't exist
-        if (playerWorldLocation == null) {
-            // Something is very wrong so return
+        // continue only if the player has just stepped onto this block
+        if (!event.isFirstStep()) {
             return;
         }
 
-        // Check if the block under the player is a portal block and initiate teleportation
-        Vector3i roundedPosition = new Vector3i(Math.round(playerWorldLocation.x), Math.round(playerWorldLocation.y), Math.round(playerWorldLocation.z));
+        long startTime = steppedOnBlockStats.start();
 
-        // continue only if there is a change in player position
-        if (oldPosition != null && !roundedPosition.equals(oldPosition)) {
-            oldPosition = roundedPosition;
-        } else {
-            oldPosition = roundedPosition;
-            return;
+        // Check if the block under the player is an activated portal block and initiate teleportation
+        Vector3ic positionBlockUnder = event.getBlockPosition();
+        Vector3i destination = portalDestinations.get(packPosition(positionBlockUnder));
+        if (destination != null) {
+            teleport(destination, player);
         }
 
-        ActivePortalPairComponent activePortalPairComponent = activatedPortals.getComponent(ActivePortalPairComponent.class);
+        steppedOnBlockStats.end(startTime);
+    }
 
-        if (activePortalPairComponent.bluePortalLocation == null || activePortalPairComponent.orangePortalLocation == null) {
+    private void teleport(Vector3ic destination, EntityRef character) {
+        int playerHeight = (int) Math.ceil(character.getComponent(CharacterMovementComponent.class).height);
+        Vector3fc landingSpot = getLandingSpot(destination, playerHeight);
+        if (landingSpot != NO_LANDING_SPOT) {
+            character.send(new CharacterTeleportEvent(new Vector3f(landingSpot)));
+            steppedOnBlockStats.count("teleports");
             return;
         }
+        character.getOwner().send(new NotificationMessageEvent("Could not teleport to the other portal as there is no space around it!", character));
+    }
+
+    /**
+     * Gets the spot next to a portal where characters of the given height land, searching for it only if it is not cached.
+     * Spots around portals that are not fully loaded are searched every time, as loading a chunk does not send the block
+     * change events that would invalidate them.
+     */
+    private Vector3fc getLandingSpot(Vector3ic destination, int playerHeight) {
+        long key = packPosition(destination);
+        TIntObjectMap<Vector3fc> portalLandingSpots = landingSpots.get(key);
+        if (portalLandingSpots == null) {
+            portalLandingSpots = new TIntObjectHashMap<>();
+            landingSpots.put(key, portalLandingSpots);
+        }
+
+        Vector3fc landingSpot = portalLandingSpots.get(playerHeight);
+        if (landingSpot == null) {
+            landingSpot = findLandingSpot(worldProvider, destination, playerHeight);
+            steppedOnBlockStats.count("landing spot searches");
+            if (isLandingAreaRelevant(destination, playerHeight)) {
+                portalLandingSpots.put(playerHeight, landingSpot);
+                maxCachedHeight = Math.max(maxCachedHeight, playerHeight);
+            }
+        }
+        return landingSpot;
+    }
+
+    /**
+     * Checks whether all blocks searched for a landing spot are loaded. The searched area spans at most two chunks per
+     * axis, so it is loaded if its corners are.
+     */
+    private boolean isLandingAreaRelevant(Vector3ic destination, int playerHeight) {
+        for (int i = -1; i <= 1; i += 2) {
+            for (int k = -1; k <= 1; k += 2) {
+                int x = destination.x() + i;
+                int z = destination.z() + k;
+                if (!worldProvider.isBlockRelevant(x, destination.y(), z)
+                        || !worldProvider.isBlockRelevant(x, destination.y() + Math.max(playerHeight, 1) - 1, z)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
 
-        // Check if the block under the player is a portal block and initiate teleportation
-        Vector3i positionBlockUnder = new Vector3i(0, -1, 0).add(roundedPosition);
-        if (activePortalPairComponent.bluePortalLocation.equals(positionBlockUnder)) {
-            teleport(new Vector3f(activePortalPairComponent.orangePortalLocation), player);
-        } else if (activePortalPairComponent.orangePortalLocation.equals(positionBlockUnder)) {
-            teleport(new Vector3f(activePortalPairComponent.bluePortalLocation), player);
+    /**
+     * Forgets the cached landing spots of a portal.
+     */
+    private void forgetLandingSpots(long key) {
+        if (landingSpots.remove(key) != null) {
+            updateMaxCachedHeight();
         }
     }
 
-    private void teleport(Vector3f destination, EntityRef character) {
-        float playerHeight = character.getComponent(CharacterMovementComponent.class).height;
+    private void updateMaxCachedHeight() {
+        maxCachedHeight = 0;
+        landingSpots.forEachValue(portalLandingSpots -> {
+            for (int height : portalLandingSpots.keys()) {
+                maxCachedHeight = Math.max(maxCachedHeight, height);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Searches the spots around a portal for one with room for a character of the given height.
+     *
+     * @return The spot the character lands on, or {@link #NO_LANDING_SPOT} if there is no room around the portal.
+     */
+    static Vector3fc findLandingSpot(WorldProvider worldProvider, Vector3ic destination, int playerHeight) {
         int j;
         for (int i = -1; i <= 1; i++) {
             for (int k = -1; k <= 1; k++) {
                 if (!(i == 0 && k == 0)) {
-                    Vector3f finalDestination = new Vector3f(i, 0, k).add(destination);
-                    Block block = worldProvider.getBlock(finalDestination);
+                    int x = destination.x() + i;
+                    int z = destination.z() + k;
+                    Block block = worldProvider.getBlock(x, destination.y(), z);
                     if (block.isPenetrable()) {
                         for (j = 0; j < playerHeight; j++) {
-                            Vector3f heightCheck = new Vector3f(0, j, 0).add(finalDestination);
-                            Block heightBlock = worldProvider.getBlock(heightCheck);
+                            Block heightBlock = worldProvider.getBlock(x, destination.y() + j, z);
                             if (!heightBlock.isPenetrable()) {
                                 break;
                             }
                         }
-                        if (j == Math.ceil(playerHeight)) {
-                            character.send(new CharacterTeleportEvent(finalDestination.add(0,1,0)));
-                            return;
+                        if (j == playerHeight) {
+                            return new Vector3f(x, destination.y() + 1, z);
                         }
                     }
 
                 }
             }
         }
-        character.getOwner().send(new NotificationMessageEvent("Could not teleport to the other portal as there is no space around it!", character));
+        return NO_LANDING_SPOT;
+    }
+
+    /**
+     * Forgets the cached landing spots of all portals whose surroundings contain the changed block.
+     */
+    @ReceiveEvent
+    public void onBlockChanged(OnChangedBlock event, EntityRef blockEntity) {
+        if (landingSpots.isEmpty()) {
+            return;
+        }
+
+        Vector3ic position = event.getBlockPosition();
+        boolean removed = false;
+        for (int i = -1; i <= 1; i++) {
+            for (int k = -1; k <= 1; k++) {
+                for (int j = 0; j < Math.max(maxCachedHeight, 1); j++) {
+                    removed |= landingSpots.remove(TriggerBlockIndex.packPosition(position.x() - i, position.y() - j, position.z() - k)) != null;
+                }
+            }
+        }
+        if (removed) {
+            updateMaxCachedHeight();
+        }
     }
 
     /*
      * On 'e' press, interaction with BluePortalBlock
      */
-    @ReceiveEvent(components = {BluePortalComponent.class})
-    public void onBluePortalActivate(ActivateEvent event, EntityRef entity) {
-        ActivePortalPairComponent activePortalPairComponent = activatedPortals.getComponent(ActivePortalPairComponent.class);
+    @ReceiveEvent
+    public void onBluePortalActivate(ActivateEvent event, EntityRef entity, BluePortalComponent bluePortalComponent) {
+        EntityRef channel = getOrCreateChannel(bluePortalComponent.channel);
+        ActivePortalPairComponent activePortalPairComponent = channel.getComponent(ActivePortalPairComponent.class);
         boolean activatedOrangePortal = activePortalPairComponent.orangePortalLocation != null;
         boolean activatedBluePortal = activePortalPairComponent.bluePortalLocation != null;
         EntityRef client = event.getInstigator().getOwner();
@@ -165,23 +279,26 @@ public class PortalSystem extends BaseComponentSystem {
 
         // If there is a previously activated BluePortal, deactivate it and activate the new one
         if (activatedBluePortal) {
-            worldProvider.getBlock(activePortalPairComponent.bluePortalLocation).getEntity().removeComponent(ActivePortalComponent.class);
+            blockEntityProvider.getBlockEntityAt(activePortalPairComponent.bluePortalLocation).removeComponent(ActivePortalComponent.class);
         }
 
         entity.addComponent(new ActivePortalComponent());
         client.send(new NotificationMessageEvent("Activated Blue Portal. " + (!activatedOrangePortal ? "Activate an Orange Portal to complete pathway." : "Jump on top to teleport!"), client));
 
-        // Update activatedPortals entity to store the new location of bluePortalBlock
+        // Update the channel entity to store the new location of bluePortalBlock
+        unlinkPortals(activePortalPairComponent);
         activePortalPairComponent.bluePortalLocation = entity.getComponent(BlockComponent.class).getPosition(new Vector3i());
-        activatedPortals.addOrSaveComponent(activePortalPairComponent);
+        linkPortals(activePortalPairComponent);
+        channel.addOrSaveComponent(activePortalPairComponent);
     }
 
     /*
      * On 'e' press, interaction with OrangePortalBlock
      */
-    @ReceiveEvent(components = {OrangePortalComponent.class})
-    public void onOrangePortalActivate(ActivateEvent event, EntityRef entity) {
-        ActivePortalPairComponent activePortalPairComponent = activatedPortals.getComponent(ActivePortalPairComponent.class);
+    @ReceiveEvent
+    public void onOrangePortalActivate(ActivateEvent event, EntityRef entity, OrangePortalComponent orangePortalComponent) {
+        EntityRef channel = getOrCreateChannel(orangePortalComponent.channel);
+        ActivePortalPairComponent activePortalPairComponent = channel.getComponent(ActivePortalPairComponent.class);
         boolean activatedOrangePortal = activePortalPairComponent.orangePortalLocation != null;
         boolean activatedBluePortal = activePortalPairComponent.bluePortalLocation != null;
         EntityRef client = event.getInstigator().getOwner();
@@ -194,41 +311,114 @@ public class PortalSystem extends BaseComponentSystem {
 
         // If there is a previously activated OrangePortal, deactivate it and activate the new one
         if (activatedOrangePortal) {
-            worldProvider.getBlock(activePortalPairComponent.orangePortalLocation).getEntity().removeComponent(ActivePortalComponent.class);
+            blockEntityProvider.getBlockEntityAt(activePortalPairComponent.orangePortalLocation).removeComponent(ActivePortalComponent.class);
         }
 
         entity.addComponent(new ActivePortalComponent());
         client.send(new NotificationMessageEvent("Activated Orange Portal. " + (!activatedBluePortal ? "Activate a Blue Portal to complete pathway." : "Jump on top to teleport!"), client));
 
-        // Update activatedPortals entity to store the new location of orangePortalBlock
+        // Update the channel entity to store the new location of orangePortalBlock
+        unlinkPortals(activePortalPairComponent);
         activePortalPairComponent.orangePortalLocation = entity.getComponent(BlockComponent.class).getPosition(new Vector3i());
-        activatedPortals.addOrSaveComponent(activePortalPairComponent);
+        linkPortals(activePortalPairComponent);
+        channel.addOrSaveComponent(activePortalPairComponent);
     }
 
 
     @Override
     public void postBegin() {
 
-        // On startup initialise/fetch the activatedPortals entity to contain the portal locations
-        if (!entityManager.getEntitiesWith(ActivePortalPairComponent.class).iterator().hasNext()) {
-            // This happens only when a new game is created.
-            activatedPortals = entityManager.create();
-            ActivePortalPairComponent activePortalPairComponent = new ActivePortalPairComponent();
+        // On startup fetch the channel entities containing the portal locations.
+        // When a new game is created there are none yet, they are created when the first portal of a channel is activated.
+        for (EntityRef channel : entityManager.getEntitiesWith(ActivePortalPairComponent.class)) {
+            ActivePortalPairComponent activePortalPairComponent = channel.getComponent(ActivePortalPairComponent.class);
+            activatedPortals.put(activePortalPairComponent.channel, channel);
+            linkPortals(activePortalPairComponent);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        activatedPortals.clear();
+        portalDestinations.clear();
+        landingSpots.clear();
+    }
+
+    @ReceiveEvent(components = ActivePortalComponent.class)
+    public void onDestroy(DestroyEvent event, EntityRef entity, BlockComponent blockComponent) {
+        BluePortalComponent bluePortalComponent = entity.getComponent(BluePortalComponent.class);
+        OrangePortalComponent orangePortalComponent = entity.getComponent(OrangePortalComponent.class);
+        String channelName = bluePortalComponent != null ? bluePortalComponent.channel : orangePortalComponent.channel;
+
+        EntityRef channel = activatedPortals.getOrDefault(channelName, EntityRef.NULL);
+        ActivePortalPairComponent activePortalPairComponent = channel.getComponent(ActivePortalPairComponent.class);
+        if (activePortalPairComponent == null) {
+            return;
+        }
+
+        // Only the portal the channel links to is unlinked, not a stale one that still has the component
+        Vector3i storedLocation = bluePortalComponent != null
+                ? activePortalPairComponent.bluePortalLocation : activePortalPairComponent.orangePortalLocation;
+        if (!blockComponent.getPosition().equals(storedLocation)) {
+            return;
+        }
+
+        unlinkPortals(activePortalPairComponent);
+        if (bluePortalComponent != null) {
             activePortalPairComponent.bluePortalLocation = null;
+        } else {
             activePortalPairComponent.orangePortalLocation = null;
-            activatedPortals.addOrSaveComponent(activePortalPairComponent);
+        }
+
+        // A channel without any activated portal is not needed anymore
+        if (activePortalPairComponent.bluePortalLocation == null && activePortalPairComponent.orangePortalLocation == null) {
+            activatedPortals.remove(channelName);
+            channel.destroy();
         } else {
-            // This happens on loading a saved game, when the activatedPortal entity already exists
-            activatedPortals = entityManager.getEntitiesWith(ActivePortalPairComponent.class).iterator().next();
+            channel.saveComponent(activePortalPairComponent);
         }
     }
 
-    @ReceiveEvent(components = ActivePortalComponent.class)
-    public void onDestroy(DestroyEvent event, EntityRef entity) {
-        if (entity.hasComponent(BluePortalComponent.class)) {
-            activatedPortals.getComponent(ActivePortalPairComponent.class).bluePortalLocation = null;
-        } else {
-            activatedPortals.getComponent(ActivePortalPairComponent.class).orangePortalLocation = null;
+    private EntityRef getOrCreateChannel(String channelName) {
+        EntityRef channel = activatedPortals.get(channelName);
+        if (channel == null) {
+            channel = entityManager.create();
+            ActivePortalPairComponent activePortalPairComponent = new ActivePortalPairComponent();
+            activePortalPairComponent.channel = channelName;
+            activePortalPairComponent.bluePortalLocation = null;
+            activePortalPairComponent.orangePortalLocation = null;
+            channel.addOrSaveComponent(activePortalPairComponent);
+            activatedPortals.put(channelName, channel);
+        }
+        return channel;
+    }
+
+    /**
+     * Makes both portals of a channel lead to each other, if both are activated.
+     */
+    private void linkPortals(ActivePortalPairComponent activePortalPairComponent) {
+        if (activePortalPairComponent.bluePortalLocation == null || activePortalPairComponent.orangePortalLocation == null) {
+            return;
         }
+        portalDestinations.put(packPosition(activePortalPairComponent.bluePortalLocation), activePortalPairComponent.orangePortalLocation);
+        portalDestinations.put(packPosition(activePortalPairComponent.orangePortalLocation), activePortalPairComponent.bluePortalLocation);
+    }
+
+    /**
+     * Removes the links between the portals of a channel, and the cached landing spots of both portals.
+     */
+    private void unlinkPortals(ActivePortalPairComponent activePortalPairComponent) {
+        if (activePortalPairComponent.bluePortalLocation != null) {
+            portalDestinations.remove(packPosition(activePortalPairComponent.bluePortalLocation));
+            forgetLandingSpots(packPosition(activePortalPairComponent.bluePortalLocation));
+        }
+        if (activePortalPairComponent.orangePortalLocation != null) {
+            portalDestinations.remove(packPosition(activePortalPairComponent.orangePortalLocation));
+            forgetLandingSpots(packPosition(activePortalPairComponent.orangePortalLocation));
+        }
+    }
+
+    private static long packPosition(Vector3ic position) {
+        return TriggerBlockIndex.packPosition(position.x(), position.y(), position.z());
     }
 }
@@ -8,12 +8,14 @@ import org.terasology.gestalt.entitysystem.component.Component;
 
 @Replicate
 public class ActivePortalPairComponent implements Component<ActivePortalPairComponent> {
+    public String channel = "";
     public Vector3i orangePortalLocation = new Vector3i();
     public Vector3i bluePortalLocation = new Vector3i();
 
     @Override
     public void copyFrom(ActivePortalPairComponent other) {
-        this.orangePortalLocation.set(other.orangePortalLocation);
-        this.bluePortalLocation.set(other.bluePortalLocation);
+        this.channel = other.channel;
+        this.orangePortalLocation = other.orangePortalLocation != null ? new Vector3i(other.orangePortalLocation) : null;
+        this.bluePortalLocation = other.bluePortalLocation != null ? new Vector3i(other.bluePortalLocation) : null;
     }
 }
@@ -15,8 +15,12 @@ public class BluePortalComponent implements Component<BluePortalComponent> {
     // Stores whether block is activated
     public boolean activated = false;
 
+    // The channel this portal belongs to, it only links to the other colour's portal on the same channel
+    public String channel = "";
+
     @Override
     public void copyFrom(BluePortalComponent other) {
         this.activated = other.activated;
+        this.channel = other.channel;
     }
 }
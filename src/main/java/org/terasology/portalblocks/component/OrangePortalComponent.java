@@ -11,8 +11,12 @@ public class OrangePortalComponent implements Component<OrangePortalComponent> {
     // Stores whether block is activated
     public boolean activated = false;
 
+    // The channel this portal belongs to, it only links to the other colour's portal on the same channel
+    public String channel = "";
+
     @Override
     public void copyFrom(OrangePortalComponent other) {
         this.activated = other.activated;
+        this.channel = other.channel;
     }
 }
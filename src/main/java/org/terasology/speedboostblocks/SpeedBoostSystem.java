@@ -3,6 +3,8 @@
 package org.terasology.speedboostblocks;
 
 import com.google.common.collect.Lists;
+import gnu.trove.map.TShortIntMap;
+import gnu.trove.map.hash.TShortIntHashMap;
 import org.joml.Vector3f;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
@@ -10,18 +12,25 @@ import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
 import org.terasology.engine.logic.characters.CharacterImpulseEvent;
-import org.terasology.engine.logic.characters.CharacterMoveInputEvent;
 import org.terasology.engine.logic.common.ActivateEvent;
 import org.terasology.engine.logic.location.LocationComponent;
 import org.terasology.engine.registry.In;
 import org.terasology.engine.world.WorldProvider;
 import org.terasology.engine.world.block.Block;
 import org.terasology.engine.world.block.BlockComponent;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.engine.world.block.family.BlockFamily;
 import org.terasology.engine.world.block.items.OnBlockItemPlaced;
+import org.terasology.funnyblocks.FloatBlockTable;
+import org.terasology.funnyblocks.FunnyBlocksStats;
+import org.terasology.funnyblocks.HandlerStats;
+import org.terasology.funnyblocks.event.OnSteppedOnBlockEvent;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 import org.terasology.speedboostblocks.component.SpeedBoostComponent;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class manages and controls SpeedBoost blocks.
@@ -31,15 +40,48 @@ import java.util.List;
  */
 @RegisterSystem(RegisterMode.AUTHORITY)
 public class SpeedBoostSystem extends BaseComponentSystem {
-    private Vector3f boostDirection = new Vector3f(); //This holds the direction to boost in
-    private int moveForce = 1; //This is the force that the boost will have. The value should be between 1 and 5 to prevent damage to the player.
-
     @In
     private EntityManager entityManager;
 
     @In
     private WorldProvider worldProvider;
 
+    @In
+    private BlockManager blockManager;
+
+    @In
+    private FunnyBlocksStats stats;
+
+    private HandlerStats steppedOnBlockStats;
+
+    private final Vector3f playerPosition = new Vector3f(); //Scratch position reused by every call of onSteppedOnBlock
+
+    private final TShortIntMap directionByBlock = new TShortIntHashMap(); //This holds the direction of every known SpeedBoost block, by block id
+    private final Map<BlockFamily, Block[]> blocksByFamily = new HashMap<>(); //This holds the block facing each direction, by block family
+    private final FloatBlockTable speedIncreaseByBlock = new FloatBlockTable(SpeedBoostSystem::getSpeedIncrease); //This holds the force of every block type, 0 if it does not boost
+
+    @Override
+    public void initialise() {
+        steppedOnBlockStats = stats.getHandlerStats("SpeedBoostSystem.onSteppedOnBlock");
+    }
+
+    @Override
+    public void postBegin() {
+        //Build the direction tables of all the SpeedBoost block families known so far
+        for (Block block : blockManager.listRegisteredBlocks()) {
+            if (block.getEntity().hasComponent(SpeedBoostComponent.class)) {
+                getBlocksByDirection(block.getBlockFamily());
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        directionByBlock.clear();
+        blocksByFamily.clear();
+        speedIncreaseByBlock.clear();
+    }
+
     /**
      * This is called when a block is placed.
      * @param event Details about the block placed.
@@ -54,17 +96,8 @@ public class SpeedBoostSystem extends BaseComponentSystem {
         //Get the visible block instance
         BlockComponent blockComponent = event.getPlacedBlock().getComponent(BlockComponent.class);
 
-        //Get all the directions that the block could take
-        List<Block> blocks = getBlockDirections(blockComponent);
-
-        //Iterate through the possible block directions
-        for(Block block : blocks) {
-            //If the direction of the block is equal to one of the possible directions
-            if(block.toString().equals(blockComponent.getBlock().toString())) {
-                //Get the block's direction number and apply it to the boost properties
-                event.getPlacedBlock().getComponent(SpeedBoostComponent.class).boostDirection = getDirection(block.toString());
-            }
-        }
+        //Get the block's direction number and apply it to the boost properties
+        event.getPlacedBlock().getComponent(SpeedBoostComponent.class).boostDirection = getBlockDirection(blockComponent.getBlock());
     }
 
     /**
@@ -82,97 +115,80 @@ public class SpeedBoostSystem extends BaseComponentSystem {
         //Get the visible block instance
         BlockComponent blockComponent = entity.getComponent(BlockComponent.class);
 
-        //Get all the directions that the block could take
-        List<Block> blocks = getBlockDirections(blockComponent);
+        //Get the block facing each direction
+        Block[] blocks = getBlocksByDirection(blockComponent.getBlock().getBlockFamily());
 
-        worldProvider.setBlock(blockComponent.getPosition(), blocks.get(direction)); //Change the block seen in the world
+        worldProvider.setBlock(blockComponent.getPosition(), blocks[direction]); //Change the block seen in the world
     }
 
     /**
-     * This is called when the character is moving.
-     * @param moveInputEvent The details of the movement.
+     * This is called when the character is standing on a trigger block.
+     * @param event The details of the block underneath the player.
      * @param player The player entity.
      * @param location The player's location.
      */
     @ReceiveEvent(components = {LocationComponent.class})
-    public void onCharacterMovement(CharacterMoveInputEvent moveInputEvent, EntityRef player, LocationComponent location) {
-        //Reset the boost properties
-        moveForce = 0;
-        boostDirection = new Vector3f();
-
-        //Get the player's location
-        Vector3f playerWorldLocation = location.getWorldPosition(new Vector3f());
-
-        //If it doesn't exist
-        if (playerWorldLocation == null) {
-            //Something is very wrong so return
-            return;
-        }
-
-        //Iterate through all the SpeedBoost blocks
-        for (EntityRef entity : entityManager.getEntitiesWith(SpeedBoostComponent.class)) {
-            //Get the block's location data
-            LocationComponent entityLocation = entity.getComponent(LocationComponent.class);
-
-            //If it does not exist
-            if (entityLocation == null) {
-                //This block is not in the world so move onto the next one
-                continue;
-            }
-
-            //Get the block's position
-            Vector3f entityWorldLocation = entityLocation.getWorldPosition(new Vector3f());
+    public void onSteppedOnBlock(OnSteppedOnBlockEvent event, EntityRef player, LocationComponent location) {
+        long startTime = steppedOnBlockStats.start();
 
-            //If it does not exist
-            if (entityWorldLocation == null) {
-                //Move on (this should never be called)
-                continue;
-            }
-
-            //If the player's location matches the block's on the x and z axis (we round it to make the numbers usable)
-            if (Math.round(playerWorldLocation.x) == entityWorldLocation.x && Math.round(playerWorldLocation.z) == entityWorldLocation.z) {
-                //If the block is underneath the player
-                if (Math.round(playerWorldLocation.y - 1) == entityWorldLocation.y) {
-                    //Get the SpeedBoost block's properties
-                    SpeedBoostComponent component = entity.getComponent(SpeedBoostComponent.class);
-                    //Assign the properties to a local variable
-                    moveForce = component.speedIncrease;
-                    boostDirection = getDirection(component.boostDirection, playerWorldLocation);
-                    //We've found a block underneath us so there is no need to continue looking
-                    break;
-                }
-            }
-        }
+        //Get the force of the block's type, the direction is kept in sync with the block's variant when it is placed or turned
+        Block block = event.getBlock();
+        int speedIncrease = (int) speedIncreaseByBlock.get(block);
 
-        //If the player is set to be boosted
-        if (boostDirection != new Vector3f() && moveForce != 0) {
+        //If the block underneath the player is a SpeedBoost block
+        if (speedIncrease != 0) {
+            //Get the player's location
+            Vector3f playerWorldLocation = location.getWorldPosition(playerPosition);
             //Calculate the impulse to be applied
-            Vector3f impulse = boostDirection.mul(moveForce);
+            Vector3f impulse = getBoostImpulse(getBlockDirection(block), speedIncrease, playerWorldLocation);
             //Apply the impulse to the player
             player.send(new CharacterImpulseEvent(impulse));
-            //Reset the force of the boost to prevent a duplicate
-            moveForce = 0;
-        } else {
-            //There is no force to apply so return
-            return;
+            steppedOnBlockStats.count("impulses");
         }
+
+        steppedOnBlockStats.end(startTime);
+    }
+
+    /**
+     * This method calculates the impulse of a SpeedBoost block.
+     * @param direction The direction of the block in integer form.
+     * @param speedIncrease The force of the boost. The value should be between 1 and 5 to prevent damage to the player.
+     * @param playerWorldLocation The player's location.
+     * @return The impulse to apply to the player.
+     */
+    private static Vector3f getBoostImpulse(int direction, int speedIncrease, Vector3f playerWorldLocation) {
+        //The impulse is handed over to the impulse event, so it is the only vector allocated
+        return getDirection(direction, playerWorldLocation, new Vector3f()).mul(speedIncrease);
+    }
+
+    /**
+     * This method gets the force every SpeedBoost block of a type starts with.
+     * @param block The block type.
+     * @return The force from the block's prefab, or 0 if the block does not boost.
+     */
+    private static float getSpeedIncrease(Block block) {
+        return block.getPrefab()
+                .map(prefab -> prefab.getComponent(SpeedBoostComponent.class))
+                .map(component -> (float) component.speedIncrease)
+                .orElse(0f);
     }
 
     /**
      * This method converts the numerical value of the direction to its Vector3f equivalent.
      * @param direction The direction in integer form.
      * @param playerDirection The direction that the player is traveling in.
-     * @return A vector version of the direction.
+     * @param dest Will hold the result.
+     * @return A vector version of the direction, in dest.
      */
-    private Vector3f getDirection(int direction, Vector3f playerDirection) {
+    private static Vector3f getDirection(int direction, Vector3f playerDirection, Vector3f dest) {
         //Check the directions against preset values
         switch (direction) {
-            case 0: return new Vector3f(0, 0, 1); //Up
-            case 1: return new Vector3f(-1, 0, 0); //Right
-            case 2: return new Vector3f(0, 0, -1); //Down
-            case 3: return new Vector3f(1, 0, 0); //Left
-            case 4: return playerDirection; //This applies an impulse in the direction the player is moving in
-            default: return new Vector3f(); //This should never happen but if the direction is unknown then do not move
+            case 0: return dest.set(0, 0, 1); //Up
+            case 1: return dest.set(-1, 0, 0); //Right
+            case 2: return dest.set(0, 0, -1); //Down
+            case 3: return dest.set(1, 0, 0); //Left
+            case 4: return dest.set(playerDirection); //This applies an impulse in the direction the player is moving in
+            default: return dest.zero(); //This should never happen but if the direction is unknown then do not move
         }
     }
 
@@ -181,7 +197,7 @@ public class SpeedBoostSystem extends BaseComponentSystem {
      * @param blockName The name of the block's type (includes direction).
      * @return The integer version of the block's direction.
      */
-    private int getDirection(String blockName) {
+    private static int getDirection(String blockName) {
         //Check the block names (internal) against preset values
         switch (blockName) {
             case "FunnyBlocks:SpeedBoost.FRONT": return 0; //Forwards
@@ -192,14 +208,44 @@ public class SpeedBoostSystem extends BaseComponentSystem {
         }
     }
 
+    /**
+     * This method obtains the direction of a block from the lookup table.
+     * @param block The block to get the direction of.
+     * @return The integer version of the block's direction.
+     */
+    private int getBlockDirection(Block block) {
+        if (!directionByBlock.containsKey(block.getId())) {
+            //The family of this block has not been seen yet, so build its tables
+            getBlocksByDirection(block.getBlockFamily());
+        }
+        return directionByBlock.get(block.getId());
+    }
+
+    /**
+     * This method gets the block facing each direction of a block family, building the lookup tables of the family the first time.
+     * @param family The family to get the rotations from
+     * @return The blocks of the family, indexed by direction
+     */
+    private Block[] getBlocksByDirection(BlockFamily family) {
+        Block[] blocks = blocksByFamily.get(family);
+        if (blocks == null) {
+            blocks = getBlockDirections(family).toArray(new Block[0]);
+            blocksByFamily.put(family, blocks);
+            for (Block block : family.getBlocks()) {
+                directionByBlock.put(block.getId(), getDirection(block.toString()));
+            }
+        }
+        return blocks;
+    }
+
     /**
      * This method gets all the possible directions that a block could be rotated in
-     * @param blockComponent The block to get the rotations from
+     * @param family The family to get the rotations from
      * @return All the possible rotations of the block
      */
-    private List<Block> getBlockDirections(BlockComponent blockComponent) {
+    private List<Block> getBlockDirections(BlockFamily family) {
         //Assign all the possible block rotations to an array
-        List<Block> blocks = Lists.newArrayList(blockComponent.getBlock().getBlockFamily().getBlocks());
+        List<Block> blocks = Lists.newArrayList(family.getBlocks());
 
         //Obtain the blocks per direction to reassign later in the correct order
         Block upBlock = blocks.get(2); //This gets the instance of the block facing forwards
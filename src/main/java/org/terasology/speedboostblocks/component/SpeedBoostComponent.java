@@ -34,6 +34,7 @@ public class SpeedBoostComponent implements Component<SpeedBoostComponent> {
 
     @Override
     public void copyFrom(SpeedBoostComponent other) {
+        this.speedIncrease = other.speedIncrease;
         this.boostDirection = other.boostDirection;
     }
 }
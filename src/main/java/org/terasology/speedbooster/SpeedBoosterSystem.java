@@ -33,6 +33,9 @@ import org.terasology.engine.registry.In;
 import org.terasology.engine.world.BlockEntityRegistry;
 import org.terasology.engine.world.WorldProvider;
 import org.terasology.engine.world.block.Block;
+import org.terasology.funnyblocks.FloatBlockTable;
+import org.terasology.funnyblocks.FunnyBlocksStats;
+import org.terasology.funnyblocks.HandlerStats;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 import org.terasology.speedbooster.component.SpeedBoosterComponent;
 
@@ -49,31 +52,68 @@ public class SpeedBoosterSystem extends BaseComponentSystem implements UpdateSub
     @In
     private WorldProvider worldProvider;
 
+    @In
+    private FunnyBlocksStats stats;
+
+    private HandlerStats enterBlockStats;
+
+    // Scratch position reused by every call of onEnterBlock
+    private final Vector3f position = new Vector3f();
+    // Speed multiplier of each block type, 0 for blocks that are not speed boosters
+    private final FloatBlockTable speedMultiplierByBlock = new FloatBlockTable(block -> block.getPrefab()
+            .map(prefab -> prefab.getComponent(SpeedBoosterComponent.class))
+            .map(speedBooster -> (float) speedBooster.speedMultiplier)
+            .orElse(0f));
+
+    @Override
+    public void initialise() {
+        enterBlockStats = stats.getHandlerStats("SpeedBoosterSystem.onEnterBlock");
+    }
+
     @Override
     public void update(float delta) {
     }
 
+    @Override
+    public void shutdown() {
+        speedMultiplierByBlock.clear();
+    }
+
     @ReceiveEvent(components = {LocationComponent.class, CharacterMovementComponent.class})
     public void onEnterBlock(OnEnterBlockEvent event, EntityRef entity) {
+        long startTime = enterBlockStats.start();
 
         LocationComponent loc = entity.getComponent(LocationComponent.class); // get player LocationComponent
-        Vector3f pos = loc.getWorldPosition(new Vector3f()); // get player position
+        Vector3f pos = loc.getWorldPosition(position); // get player position
         pos.y = pos.y() - 1; // get position below player
         Block block = worldProvider.getBlock(pos); // get block at that position
         CharacterMovementComponent cmc = entity.getComponent(CharacterMovementComponent.class);
-        SpeedBoosterComponent sbc = block.getEntity().getComponent(SpeedBoosterComponent.class);
-        if (sbc != null) {
+        float speedMultiplier = speedMultiplierByBlock.get(block);
+        if (speedMultiplier != 0) {
             // this will increase the speed of player
-            cmc.speedMultiplier = sbc.speedMultiplier;
-            entity.saveComponent(cmc);
+            setSpeedMultiplier(entity, cmc, speedMultiplier);
             Vector3f imp = new Vector3f(cmc.getVelocity()).normalize().mul(64);
             imp.y = 6;
             entity.send(new CharacterImpulseEvent(imp));
+            enterBlockStats.count("impulses");
         } else {
             // this will return speed of player to normal
-            cmc.speedMultiplier = 1f;
-            entity.saveComponent(cmc);
+            setSpeedMultiplier(entity, cmc, 1f);
+        }
+        enterBlockStats.end(startTime);
+    }
+
+    /**
+     * Only saves the movement component when the multiplier actually changes, as every save is replicated.
+     */
+    private void setSpeedMultiplier(EntityRef entity, CharacterMovementComponent cmc, float speedMultiplier) {
+        if (cmc.speedMultiplier == speedMultiplier) {
+            enterBlockStats.count("skipped movement writes");
+            return;
         }
+        cmc.speedMultiplier = speedMultiplier;
+        entity.saveComponent(cmc);
+        enterBlockStats.count("movement writes");
     }
 }
 
@@ -0,0 +1,109 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.accelerationblocks;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.accelerationblocks.component.AccelerationBlockComponent;
+import org.terasology.accelerationblocks.component.AccelerationComponent;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.math.Side;
+import org.terasology.engine.world.block.Block;
+import org.terasology.funnyblocks.BlockTable;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class AccelerationSystemTest {
+    private static final Logger logger = LoggerFactory.getLogger(AccelerationSystemTest.class);
+
+    private static final int ENTERED_BLOCKS = Integer.getInteger("funnyBlocks.hotPath.enteredBlocks", 1_000_000);
+    private static final Side[] SIDES = {Side.FRONT, Side.RIGHT, Side.BACK, Side.LEFT};
+
+    private final AccelerationSystem system = new AccelerationSystem();
+
+    @Test
+    public void keepsVelocityIgnoringBlockDirection() {
+        AccelerationBlockComponent blockAcceleration = new AccelerationBlockComponent();
+        blockAcceleration.velocity.set(0, 0, 2);
+        blockAcceleration.ignoreBlockDirection = true;
+
+        for (Side side : SIDES) {
+            assertEquals(new Vector3f(0, 0, 2), system.computeBlockAcceleration(createBlock((short) 1, side, blockAcceleration)).velocity);
+        }
+    }
+
+    @Test
+    public void tableHoldsComputedAcceleration() {
+        AccelerationBlockComponent blockAcceleration = new AccelerationBlockComponent();
+        blockAcceleration.velocity.set(0, 0, 2);
+        BlockTable<AccelerationComponent> table = new BlockTable<>(system::computeBlockAcceleration);
+
+        for (int i = 0; i < SIDES.length; i++) {
+            Block block = createBlock((short) (i + 1), SIDES[i], blockAcceleration);
+            AccelerationComponent acceleration = table.get(block);
+            assertEquals(system.computeBlockAcceleration(block).velocity, acceleration.velocity);
+            assertSame(acceleration, table.get(block));
+        }
+    }
+
+    /**
+     * Compares entering acceleration blocks with the table against computing the rotated acceleration on every entry.
+     * The number of entries can be set with the {@code funnyBlocks.hotPath.enteredBlocks} system property.
+     */
+    @Tag("HotPathTest")
+    @Test
+    public void timesLookupAgainstComputation() {
+        AccelerationBlockComponent blockAcceleration = new AccelerationBlockComponent();
+        blockAcceleration.velocity.set(0, 0, 2);
+        Block[] blocks = new Block[SIDES.length];
+        for (int i = 0; i < SIDES.length; i++) {
+            blocks[i] = createBlock((short) (i + 1), SIDES[i], blockAcceleration);
+        }
+        BlockTable<AccelerationComponent> table = new BlockTable<>(system::computeBlockAcceleration);
+
+        // Warm up both paths, then time them, summing up the results so neither is optimised away
+        float sum = 0;
+        for (int i = 0; i < ENTERED_BLOCKS / 4; i++) {
+            sum += table.get(blocks[i % blocks.length]).velocity.x;
+            sum += system.computeBlockAcceleration(blocks[i % blocks.length]).velocity.x;
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < ENTERED_BLOCKS; i++) {
+            sum += table.get(blocks[i % blocks.length]).velocity.x;
+        }
+        long lookupNanos = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        for (int i = 0; i < ENTERED_BLOCKS; i++) {
+            sum += system.computeBlockAcceleration(blocks[i % blocks.length]).velocity.x;
+        }
+        long computationNanos = System.nanoTime() - startTime;
+
+        logger.info("{} entered acceleration blocks: {}ns per table lookup, {}ns per computation (checksum {})", ENTERED_BLOCKS,
+                String.format("%.1f", (double) lookupNanos / ENTERED_BLOCKS),
+                String.format("%.1f", (double) computationNanos / ENTERED_BLOCKS), sum);
+    }
+
+    /**
+     * Creates a stand-in for an acceleration block facing the given side, which does not record its invocations.
+     */
+    private static Block createBlock(short id, Side side, AccelerationBlockComponent blockAcceleration) {
+        Prefab prefab = mock(Prefab.class, withSettings().stubOnly());
+        when(prefab.getComponent(AccelerationBlockComponent.class)).thenReturn(blockAcceleration);
+        Block block = mock(Block.class, withSettings().stubOnly());
+        when(block.getId()).thenReturn(id);
+        when(block.getDirection()).thenReturn(side);
+        when(block.getPrefab()).thenReturn(Optional.of(prefab));
+        return block;
+    }
+}
@@ -0,0 +1,28 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.breakingblocks;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BreakingSystemTest {
+
+    @Test
+    public void noIntervalMissedBeforeNextOneIsDue() {
+        assertEquals(0, BreakingSystem.getMissedIntervals(1000, 500, 1000));
+        assertEquals(0, BreakingSystem.getMissedIntervals(1000, 500, 1499));
+    }
+
+    @Test
+    public void countsWholeMissedIntervals() {
+        assertEquals(1, BreakingSystem.getMissedIntervals(1000, 500, 1500));
+        assertEquals(3, BreakingSystem.getMissedIntervals(1000, 500, 2999));
+    }
+
+    @Test
+    public void handlesEarlyAndZeroIntervals() {
+        assertEquals(0, BreakingSystem.getMissedIntervals(2000, 500, 1000));
+        assertEquals(0, BreakingSystem.getMissedIntervals(1000, 0, 5000));
+    }
+}
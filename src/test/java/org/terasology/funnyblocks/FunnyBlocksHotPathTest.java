@@ -0,0 +1,390 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks;
+
+import org.joml.Vector3f;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.accelerationblocks.AccelerationSystem;
+import org.terasology.accelerationblocks.component.AccelerationComponent;
+import org.terasology.breakingblocks.BreakingSystem;
+import org.terasology.breakingblocks.component.BreakingComponent;
+import org.terasology.engine.context.Context;
+import org.terasology.engine.context.internal.ContextImpl;
+import org.terasology.engine.core.Time;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.logic.characters.CharacterMovementComponent;
+import org.terasology.engine.logic.delay.DelayManager;
+import org.terasology.engine.logic.delay.DelayedActionTriggeredEvent;
+import org.terasology.engine.logic.location.LocationComponent;
+import org.terasology.engine.network.ClientComponent;
+import org.terasology.engine.registry.CoreRegistry;
+import org.terasology.engine.registry.InjectionHelper;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockComponent;
+import org.terasology.engine.world.block.family.BlockFamily;
+import org.terasology.funnyblocks.component.BouncyBlockComponent;
+import org.terasology.funnyblocks.event.OnSteppedOnBlockEvent;
+import org.terasology.funnyblocks.system.BouncySystem;
+import org.terasology.funnyblocks.system.FunnyBlocksStatsSystem;
+import org.terasology.funnyblocks.system.PlayerProximitySystem;
+import org.terasology.gestalt.assets.management.AssetManager;
+import org.terasology.portalblocks.PortalSystem;
+import org.terasology.portalblocks.component.ActivePortalPairComponent;
+import org.terasology.speedboostblocks.SpeedBoostSystem;
+import org.terasology.speedboostblocks.component.SpeedBoostComponent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Times the hot paths of the funny block systems against stand-ins for the engine, without starting one: the
+ * stepped-on-block handlers of the bouncy, speed boost and portal blocks, and the updates of the breaking and
+ * acceleration blocks.
+ * <p>
+ * The stand-ins for the {@link EntityManager}, {@link WorldProvider} and entities are stub-only mocks, so their cost is
+ * the same for every module version and the figures can be compared between versions on the same machine.
+ * <p>
+ * The workload can be set with system properties:
+ * <ul>
+ *     <li>{@code funnyBlocks.hotPath.blocks}: blocks stepped on, Breaking blocks triggered and accelerated entities.</li>
+ *     <li>{@code funnyBlocks.hotPath.players}: characters sending one movement input per tick.</li>
+ *     <li>{@code funnyBlocks.hotPath.hitRatio}: share of the stepped on blocks that are of the handled type, and share
+ *     of the Breaking blocks and accelerated entities that are near a player.</li>
+ *     <li>{@code funnyBlocks.hotPath.ticks}: ticks timed, after a quarter as many ticks of warm-up.</li>
+ * </ul>
+ */
+@Tag("HotPathTest")
+public class FunnyBlocksHotPathTest {
+    private static final Logger logger = LoggerFactory.getLogger(FunnyBlocksHotPathTest.class);
+
+    private static final int BLOCKS = Integer.getInteger("funnyBlocks.hotPath.blocks", 1000);
+    private static final int PLAYERS = Integer.getInteger("funnyBlocks.hotPath.players", 20);
+    private static final float HIT_RATIO = Float.parseFloat(System.getProperty("funnyBlocks.hotPath.hitRatio", "0.5"));
+    private static final int TICKS = Integer.getInteger("funnyBlocks.hotPath.ticks", 2000);
+    private static final int WARMUP_TICKS = TICKS / 4;
+    private static final long TICK_MS = 16;
+    private static final int FLOOR_Y = 10;
+    // Distance between the players, far enough apart that each has its own blocks around it
+    private static final int PLAYER_SPACING = 200;
+    // Action id of the BreakingSystem's scheduled damage
+    private static final String BREAK_ACTION_ID = "FunnyBlocks:breakingBlockDamage";
+
+    private final Context context = new ContextImpl();
+    private final List<EntityRef> players = new ArrayList<>();
+    private final List<LocationComponent> playerLocations = new ArrayList<>();
+    private final Block plainBlock = standInBlock((short) 1);
+    private FunnyBlocksStats stats;
+    private EntityManager entityManager;
+    private long gameTime;
+
+    @BeforeEach
+    public void setup() {
+        stats = new FunnyBlocksStatsSystem();
+        context.put(FunnyBlocksStats.class, stats);
+
+        Time time = standIn(Time.class);
+        when(time.getGameTimeInMs()).thenAnswer(invocation -> gameTime);
+        context.put(Time.class, time);
+
+        // The players' characters, each with a client so the player proximity finds them
+        List<EntityRef> clients = new ArrayList<>();
+        for (int i = 0; i < PLAYERS; i++) {
+            LocationComponent location = new LocationComponent(new Vector3f(i * PLAYER_SPACING, FLOOR_Y + 1, 0));
+            EntityRef character = standIn(EntityRef.class);
+            when(character.getId()).thenReturn(i + 1L);
+            when(character.getComponent(LocationComponent.class)).thenReturn(location);
+            when(character.getComponent(CharacterMovementComponent.class)).thenReturn(new CharacterMovementComponent());
+            when(character.getOwner()).thenReturn(EntityRef.NULL);
+            players.add(character);
+            playerLocations.add(location);
+
+            ClientComponent clientComponent = new ClientComponent();
+            clientComponent.character = character;
+            EntityRef client = standIn(EntityRef.class);
+            when(client.getComponent(ClientComponent.class)).thenReturn(clientComponent);
+            clients.add(client);
+        }
+        entityManager = standIn(EntityManager.class);
+        when(entityManager.getEntitiesWith(ClientComponent.class)).thenReturn(clients);
+        context.put(EntityManager.class, entityManager);
+
+        // Only the stepped on blocks are solid, so there is room around every portal
+        WorldProvider worldProvider = standIn(WorldProvider.class);
+        Block air = standInBlock((short) 0);
+        when(air.isPenetrable()).thenReturn(true);
+        when(worldProvider.getBlock(anyInt(), anyInt(), anyInt())).thenAnswer(invocation -> {
+            int x = invocation.getArgument(0);
+            int y = invocation.getArgument(1);
+            int z = invocation.getArgument(2);
+            return y == FLOOR_Y && z == 0 && x >= 0 && x % 4 == 0 && x / 4 < BLOCKS ? plainBlock : air;
+        });
+        when(worldProvider.isBlockRelevant(anyInt(), anyInt(), anyInt())).thenReturn(true);
+        context.put(WorldProvider.class, worldProvider);
+
+        context.put(DelayManager.class, standIn(DelayManager.class));
+
+        PlayerProximitySystem playerProximity = new PlayerProximitySystem();
+        InjectionHelper.inject(playerProximity, context);
+        context.put(PlayerProximity.class, playerProximity);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        CoreRegistry.setContext(null);
+    }
+
+    @Test
+    public void bouncySystemOnSteppedOnBlock() {
+        BouncyBlockComponent bouncyBlock = new BouncyBlockComponent();
+        Block block = standInBlock((short) 2);
+        Prefab prefab = standIn(Prefab.class);
+        when(prefab.getComponent(BouncyBlockComponent.class)).thenReturn(bouncyBlock);
+        when(block.getPrefab()).thenReturn(Optional.of(prefab));
+
+        BouncySystem system = new BouncySystem();
+        InjectionHelper.inject(system, context);
+        system.initialise();
+
+        OnSteppedOnBlockEvent[] events = createSteppedOnBlockEvents(index -> block);
+        measure("BouncySystem.onSteppedOnBlock", tick -> {
+            for (int i = 0; i < PLAYERS; i++) {
+                system.onSteppedOnBlock(events[getSteppedOnBlock(tick, i)], players.get(i));
+            }
+        });
+        assertEquals((long) TICKS * PLAYERS, stats.getHandlerStats("BouncySystem.onSteppedOnBlock").getInvocations());
+    }
+
+    @Test
+    public void speedBoostSystemOnSteppedOnBlock() {
+        SpeedBoostComponent speedBoost = new SpeedBoostComponent();
+        Prefab prefab = standIn(Prefab.class);
+        when(prefab.getComponent(SpeedBoostComponent.class)).thenReturn(speedBoost);
+        // The family lists its blocks facing left, right, front and back
+        BlockFamily family = standIn(BlockFamily.class);
+        Block[] blocks = new Block[4];
+        String[] sides = {"LEFT", "RIGHT", "FRONT", "BACK"};
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = standInBlock((short) (3 + i));
+            when(blocks[i].getPrefab()).thenReturn(Optional.of(prefab));
+            when(blocks[i].getBlockFamily()).thenReturn(family);
+            when(blocks[i].toString()).thenReturn("FunnyBlocks:SpeedBoost." + sides[i]);
+        }
+        when(family.getBlocks()).thenReturn(Arrays.asList(blocks));
+
+        SpeedBoostSystem system = new SpeedBoostSystem();
+        InjectionHelper.inject(system, context);
+        system.initialise();
+
+        OnSteppedOnBlockEvent[] events = createSteppedOnBlockEvents(index -> blocks[index % blocks.length]);
+        measure("SpeedBoostSystem.onSteppedOnBlock", tick -> {
+            for (int i = 0; i < PLAYERS; i++) {
+                system.onSteppedOnBlock(events[getSteppedOnBlock(tick, i)], players.get(i), playerLocations.get(i));
+            }
+        });
+        assertEquals((long) TICKS * PLAYERS, stats.getHandlerStats("SpeedBoostSystem.onSteppedOnBlock").getInvocations());
+    }
+
+    @Test
+    public void portalSystemTeleport() {
+        // Every two hit blocks are the blue and orange portal of a channel
+        List<EntityRef> channels = new ArrayList<>();
+        Vector3i bluePortal = null;
+        for (int i = 0; i < BLOCKS; i++) {
+            if (!isHit(i)) {
+                continue;
+            }
+            Vector3i position = new Vector3i(i * 4, FLOOR_Y, 0);
+            if (bluePortal == null) {
+                bluePortal = position;
+                continue;
+            }
+            ActivePortalPairComponent activePortalPair = new ActivePortalPairComponent();
+            activePortalPair.channel = "hotPath" + channels.size();
+            activePortalPair.bluePortalLocation = bluePortal;
+            activePortalPair.orangePortalLocation = position;
+            EntityRef channel = standIn(EntityRef.class);
+            when(channel.getComponent(ActivePortalPairComponent.class)).thenReturn(activePortalPair);
+            channels.add(channel);
+            bluePortal = null;
+        }
+        when(entityManager.getEntitiesWith(ActivePortalPairComponent.class)).thenReturn(channels);
+
+        PortalSystem system = new PortalSystem();
+        InjectionHelper.inject(system, context);
+        system.initialise();
+        system.postBegin();
+
+        // Portals teleport on the first step onto them, so every input is one
+        OnSteppedOnBlockEvent[] events = createSteppedOnBlockEvents(index -> plainBlock);
+        measure("PortalSystem.onSteppedOnBlock", tick -> {
+            for (int i = 0; i < PLAYERS; i++) {
+                system.onSteppedOnBlock(events[getSteppedOnBlock(tick, i)], players.get(i));
+            }
+        });
+        assertEquals((long) TICKS * PLAYERS, stats.getHandlerStats("PortalSystem.onSteppedOnBlock").getInvocations());
+    }
+
+    @Test
+    public void breakingSystemUpdate() {
+        // Damage events look up the damage type through the asset manager
+        Context coreContext = new ContextImpl();
+        AssetManager assetManager = standIn(AssetManager.class);
+        when(assetManager.getAsset(anyString(), eq(Prefab.class))).thenReturn(Optional.of(standIn(Prefab.class)));
+        coreContext.put(AssetManager.class, assetManager);
+        CoreRegistry.setContext(coreContext);
+
+        BreakingSystem system = new BreakingSystem();
+        InjectionHelper.inject(system, context);
+        system.initialise();
+        // Every block that is due is damaged in the same tick, so the figures do not depend on the budget
+        system.breakingBlockBudget(BLOCKS);
+
+        EntityRef[] blockEntities = new EntityRef[BLOCKS];
+        BreakingComponent[] breakingComponents = new BreakingComponent[BLOCKS];
+        Vector3f position = new Vector3f();
+        for (int i = 0; i < BLOCKS; i++) {
+            breakingComponents[i] = new BreakingComponent();
+            blockEntities[i] = standIn(EntityRef.class);
+            when(blockEntities[i].getComponent(BreakingComponent.class)).thenReturn(breakingComponents[i]);
+            getUpdatedPosition(i, position);
+            Vector3i blockPosition = new Vector3i(Math.round(position.x), FLOOR_Y, Math.round(position.z));
+            when(blockEntities[i].getComponent(BlockComponent.class)).thenReturn(new BlockComponent(plainBlock, blockPosition));
+            system.onSteppedOnBlock(new OnSteppedOnBlockEvent(blockPosition, blockEntities[i], plainBlock, true), players.get(0));
+        }
+
+        // The blocks are damaged once per second, so a share of them becomes due every tick
+        DelayedActionTriggeredEvent breakTimeEvent = new DelayedActionTriggeredEvent(BREAK_ACTION_ID);
+        int ticksPerInterval = (int) (1000 / TICK_MS);
+        measure("BreakingSystem.update", tick -> {
+            for (int i = tick % ticksPerInterval; i < BLOCKS; i += ticksPerInterval) {
+                system.onBreakTime(breakTimeEvent, blockEntities[i], breakingComponents[i]);
+            }
+            system.update(TICK_MS / 1000f);
+        });
+        assertEquals(TICKS, stats.getHandlerStats("BreakingSystem.update").getInvocations());
+    }
+
+    @Test
+    public void accelerationSystemUpdate() {
+        AccelerationSystem system = new AccelerationSystem();
+        InjectionHelper.inject(system, context);
+        system.initialise();
+
+        for (int i = 0; i < BLOCKS; i++) {
+            AccelerationComponent acceleration = new AccelerationComponent();
+            acceleration.velocity.set(0, 0, 1);
+            acceleration.continuous = i % 2 == 0;
+            EntityRef entity = standIn(EntityRef.class);
+            when(entity.getId()).thenReturn(PLAYERS + i + 1L);
+            when(entity.getComponent(AccelerationComponent.class)).thenReturn(acceleration);
+            when(entity.hasComponent(LocationComponent.class)).thenReturn(true);
+            when(entity.getComponent(LocationComponent.class))
+                    .thenReturn(new LocationComponent(getUpdatedPosition(i, new Vector3f())));
+            // The handler does not look at the event
+            system.onAccelerationAdded(null, entity, acceleration);
+        }
+
+        measure("AccelerationSystem.update", tick -> system.update(TICK_MS / 1000f));
+        assertEquals(TICKS, stats.getHandlerStats("AccelerationSystem.update").getInvocations());
+    }
+
+    /**
+     * Runs the warm-up ticks, then times the measured ones and logs the figures of the handler.
+     *
+     * @param handler The name of the handler's figures.
+     * @param tick Runs one tick of the workload, given the tick's number.
+     */
+    private void measure(String handler, IntConsumer tick) {
+        for (int i = 0; i < WARMUP_TICKS; i++) {
+            gameTime += TICK_MS;
+            tick.accept(i);
+        }
+        stats.reset();
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < TICKS; i++) {
+            gameTime += TICK_MS;
+            tick.accept(WARMUP_TICKS + i);
+        }
+        long nanos = System.nanoTime() - startTime;
+
+        logger.info("{}: {} blocks, {} players, hit ratio {}, {}us per tick\n{}", handler, BLOCKS, PLAYERS, HIT_RATIO,
+                String.format("%.2f", nanos / 1000.0 / TICKS), stats.getHandlerStats(handler));
+    }
+
+    /**
+     * Creates the events for stepping onto each of the blocks, which are laid out in a row. Hit blocks are of the handled
+     * type, the others are plain blocks.
+     *
+     * @param hitBlock Gets the type of the hit block with the given index.
+     */
+    private OnSteppedOnBlockEvent[] createSteppedOnBlockEvents(IntFunction<Block> hitBlock) {
+        OnSteppedOnBlockEvent[] events = new OnSteppedOnBlockEvent[BLOCKS];
+        for (int i = 0; i < BLOCKS; i++) {
+            Block block = isHit(i) ? hitBlock.apply(i) : plainBlock;
+            events[i] = new OnSteppedOnBlockEvent(new Vector3i(i * 4, FLOOR_Y, 0), EntityRef.NULL, block, true);
+        }
+        return events;
+    }
+
+    /**
+     * Gets the block a player steps onto in a tick, so that the players walk over all blocks in turn.
+     */
+    private static int getSteppedOnBlock(int tick, int player) {
+        return (int) (((long) tick * PLAYERS + player) % BLOCKS);
+    }
+
+    /**
+     * Gets the position of a Breaking block or accelerated entity: around one of the players if it is a hit, far away
+     * from all of them otherwise.
+     */
+    private static Vector3f getUpdatedPosition(int index, Vector3f dest) {
+        if (!isHit(index)) {
+            return dest.set(index * 4, FLOOR_Y, 100_000);
+        }
+        int offset = index / PLAYERS;
+        return dest.set((index % PLAYERS) * PLAYER_SPACING + offset % 16, FLOOR_Y, offset / 16 % 16);
+    }
+
+    /**
+     * Checks whether a block or entity is a hit, spreading the hits evenly at {@link #HIT_RATIO}.
+     */
+    private static boolean isHit(int index) {
+        return (int) ((index + 1) * HIT_RATIO) > (int) (index * HIT_RATIO);
+    }
+
+    /**
+     * Creates a stand-in that does not record its invocations, so it can be called millions of times.
+     */
+    private static <T> T standIn(Class<T> type) {
+        return mock(type, withSettings().stubOnly());
+    }
+
+    private static Block standInBlock(short id) {
+        Block block = standIn(Block.class);
+        when(block.getId()).thenReturn(id);
+        when(block.getPrefab()).thenReturn(Optional.empty());
+        return block;
+    }
+}
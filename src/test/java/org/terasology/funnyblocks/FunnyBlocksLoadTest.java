@@ -0,0 +1,178 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks;
+
+import org.joml.Vector3f;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.logic.characters.CharacterMoveInputEvent;
+import org.terasology.engine.logic.characters.CharacterMovementComponent;
+import org.terasology.engine.logic.characters.events.OnEnterBlockEvent;
+import org.terasology.engine.logic.location.LocationComponent;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.moduletestingenvironment.MTEExtension;
+import org.terasology.moduletestingenvironment.ModuleTestingHelper;
+import org.terasology.moduletestingenvironment.extension.Dependencies;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Headless load scenario: simulated characters walk scripted paths over a course of funny blocks on a headless host,
+ * and the per-handler figures of all funny block systems are reported afterwards, together with the allocations per tick.
+ * <p>
+ * The number of characters and ticks can be set with the {@code funnyBlocks.loadTest.characters} and
+ * {@code funnyBlocks.loadTest.ticks} system properties, to compare module versions on the same machine.
+ */
+@Tag("MteTest")
+@ExtendWith(MTEExtension.class)
+@Dependencies({"FunnyBlocks"})
+public class FunnyBlocksLoadTest {
+    private static final Logger logger = LoggerFactory.getLogger(FunnyBlocksLoadTest.class);
+
+    private static final int CHARACTERS = Integer.getInteger("funnyBlocks.loadTest.characters", 50);
+    private static final int TICKS = Integer.getInteger("funnyBlocks.loadTest.ticks", 300);
+    private static final int FLOOR_Y = 10;
+    private static final int COURSE_LENGTH = 60;
+    private static final int LANES = 10;
+    // Blocks walked per tick
+    private static final float WALK_SPEED = 0.25f;
+    // The course repeats these blocks along each lane
+    private static final String[] COURSE_BLOCKS = {
+            "FunnyBlocks:BouncyBlock",
+            "FunnyBlocks:BreakingBlock",
+            "FunnyBlocks:SpeedBoost",
+            "FunnyBlocks:SpeedBooster",
+            "FunnyBlocks:BluePortalBlock",
+            "FunnyBlocks:OrangePortalBlock"
+    };
+
+    @In
+    private ModuleTestingHelper helper;
+
+    @In
+    private EntityManager entityManager;
+
+    @In
+    private WorldProvider worldProvider;
+
+    @In
+    private BlockManager blockManager;
+
+    @In
+    private FunnyBlocksStats stats;
+
+    @Test
+    public void walkCourse() {
+        buildCourse();
+        // A connected client keeps the course near a player, so the systems run their regular paths
+        helper.createClient();
+
+        List<EntityRef> characters = new ArrayList<>();
+        for (int i = 0; i < CHARACTERS; i++) {
+            characters.add(entityManager.create(
+                    new LocationComponent(getPathPosition(i, 0, new Vector3f())), new CharacterMovementComponent()));
+        }
+        stats.reset();
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+
+        int[] tick = {0};
+        Vector3f position = new Vector3f();
+        helper.runWhile(() -> {
+            for (int i = 0; i < characters.size(); i++) {
+                walk(characters.get(i), i, tick[0], position);
+            }
+            return ++tick[0] < TICKS;
+        });
+
+        long nanos = System.nanoTime() - startTime;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        StringBuilder report = new StringBuilder()
+                .append(CHARACTERS).append(" characters, ").append(TICKS).append(" ticks, ")
+                .append(String.format("%.2fms per tick, %d bytes allocated per tick%n", nanos / 1e6 / TICKS, allocated / TICKS));
+        for (String handler : new String[]{
+                "BlockUnderCharacterSystem.onCharacterMove",
+                "BlockUnderCharacterSystem.update",
+                "BouncySystem.onSteppedOnBlock",
+                "BreakingSystem.onSteppedOnBlock",
+                "BreakingSystem.update",
+                "SpeedBoostSystem.onSteppedOnBlock",
+                "SpeedBoosterSystem.onEnterBlock",
+                "AccelerationSystem.onEnterBlock",
+                "AccelerationSystem.update",
+                "PortalSystem.onSteppedOnBlock"}) {
+            report.append(stats.getHandlerStats(handler)).append('\n');
+        }
+        logger.info("Funny blocks load test\n{}", report);
+
+        assertTrue(stats.getHandlerStats("BlockUnderCharacterSystem.onCharacterMove").getInvocations() >= (long) CHARACTERS * TICKS / 2);
+        assertTrue(stats.getHandlerStats("BlockUnderCharacterSystem.update").getCounter("stepped on block events") > 0);
+    }
+
+    private void buildCourse() {
+        helper.forceAndWaitForGeneration(new Vector3i(0, FLOOR_Y, 0));
+        helper.forceAndWaitForGeneration(new Vector3i(COURSE_LENGTH, FLOOR_Y, LANES));
+
+        Block air = blockManager.getBlock(BlockManager.AIR_ID);
+        for (int x = 0; x <= COURSE_LENGTH; x++) {
+            for (int z = 0; z < LANES; z++) {
+                worldProvider.setBlock(new Vector3i(x, FLOOR_Y, z), blockManager.getBlock(COURSE_BLOCKS[x % COURSE_BLOCKS.length]));
+                for (int y = FLOOR_Y + 1; y <= FLOOR_Y + 3; y++) {
+                    worldProvider.setBlock(new Vector3i(x, y, z), air);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves a character one step along its path and sends the events the character movement would send.
+     */
+    private void walk(EntityRef character, int index, int tick, Vector3f position) {
+        LocationComponent location = character.getComponent(LocationComponent.class);
+        if (location == null) {
+            return;
+        }
+
+        Block oldBlock = worldProvider.getBlock(getFloorPosition(location.getWorldPosition(position)));
+        location.setWorldPosition(getPathPosition(index, tick, position));
+        character.saveComponent(location);
+
+        Vector3i floorPosition = getFloorPosition(position);
+        Block newBlock = worldProvider.getBlock(floorPosition);
+        if (newBlock != oldBlock) {
+            character.send(new OnEnterBlockEvent(oldBlock, newBlock, new Vector3i(0, -1, 0)));
+        }
+        character.send(new CharacterMoveInputEvent(tick, 0, 0, new Vector3f(1, 0, 0), false, false, false, 16));
+    }
+
+    /**
+     * Gets the position of a character on its path: back and forth along its lane, starting at a different spot for
+     * every character.
+     */
+    private static Vector3f getPathPosition(int index, int tick, Vector3f dest) {
+        float distance = (index * 7 + tick * WALK_SPEED) % (2 * COURSE_LENGTH);
+        float x = distance <= COURSE_LENGTH ? distance : 2 * COURSE_LENGTH - distance;
+        return dest.set(x, FLOOR_Y + 1, index % LANES);
+    }
+
+    private static Vector3i getFloorPosition(Vector3f position) {
+        return new Vector3i(Math.round(position.x), FLOOR_Y, Math.round(position.z));
+    }
+}
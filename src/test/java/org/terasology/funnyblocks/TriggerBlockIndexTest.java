@@ -0,0 +1,40 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class TriggerBlockIndexTest {
+    // Largest coordinates that fit into 21 bits
+    private static final int MAX = (1 << 20) - 1;
+    private static final int MIN = -(1 << 20);
+
+    @Test
+    public void unpacksPackedPositions() {
+        int[][] positions = {{0, 0, 0}, {1, -1, 2}, {-17, 64, -3}, {MAX, MIN, MAX}, {MIN, MAX, MIN}, {-1, -1, -1}};
+        for (int[] position : positions) {
+            long key = TriggerBlockIndex.packPosition(position[0], position[1], position[2]);
+            assertEquals(position[0], TriggerBlockIndex.unpackX(key));
+            assertEquals(position[1], TriggerBlockIndex.unpackY(key));
+            assertEquals(position[2], TriggerBlockIndex.unpackZ(key));
+        }
+    }
+
+    @Test
+    public void packsNeighboursToDifferentKeys() {
+        long key = TriggerBlockIndex.packPosition(-1, 0, 0);
+        assertNotEquals(key, TriggerBlockIndex.packPosition(0, -1, 0));
+        assertNotEquals(key, TriggerBlockIndex.packPosition(0, 0, -1));
+        assertNotEquals(key, TriggerBlockIndex.packPosition(0, 0, 0));
+    }
+
+    @Test
+    public void neverPacksToMinusOne() {
+        // BlockUnderCharacterSystem uses -1 for "no block"
+        assertNotEquals(-1L, TriggerBlockIndex.packPosition(-1, -1, -1));
+        assertNotEquals(-1L, TriggerBlockIndex.packPosition(MIN, MIN, MIN));
+    }
+}
@@ -0,0 +1,195 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks.system;
+
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.context.Context;
+import org.terasology.engine.context.internal.ContextImpl;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.logic.characters.CharacterMoveInputEvent;
+import org.terasology.engine.logic.location.LocationComponent;
+import org.terasology.engine.registry.InjectionHelper;
+import org.terasology.engine.world.block.Block;
+import org.terasology.funnyblocks.FunnyBlocksStats;
+import org.terasology.funnyblocks.TriggerBlockIndex;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BlockUnderCharacterSystemTest {
+    private static final int CHARACTERS = 5;
+    private static final int TICKS = 100;
+
+    @Test
+    public void reusesMoveSamples() {
+        BlockUnderCharacterSystem system = new BlockUnderCharacterSystem();
+        Context context = new ContextImpl();
+        context.put(TriggerBlockIndex.class, new EmptyTriggerBlockIndex());
+        context.put(FunnyBlocksStats.class, new FunnyBlocksStatsSystem());
+        InjectionHelper.inject(system, context);
+        system.initialise();
+
+        List<EntityRef> characters = new ArrayList<>();
+        List<LocationComponent> locations = new ArrayList<>();
+        for (int i = 0; i < CHARACTERS; i++) {
+            EntityRef character = mock(EntityRef.class);
+            when(character.getId()).thenReturn(i + 1L);
+            characters.add(character);
+            locations.add(new LocationComponent(new Vector3f(0, 1, i)));
+        }
+        CharacterMoveInputEvent moveInputEvent = mock(CharacterMoveInputEvent.class);
+
+        for (int tick = 0; tick < TICKS; tick++) {
+            for (int i = 0; i < CHARACTERS; i++) {
+                // Two inputs per tick, moving far enough to cross blocks in between
+                for (int input = 0; input < 2; input++) {
+                    locations.get(i).setWorldPosition(new Vector3f((tick * 2 + input) * 3 % 12, 1, i));
+                    system.onCharacterMove(moveInputEvent, characters.get(i), locations.get(i));
+                }
+            }
+            system.update(0.016f);
+            // Every input of a tick is back in the pool, and later ticks take theirs from it instead of creating new ones
+            assertEquals(CHARACTERS * 2, system.getPooledSampleCount());
+        }
+    }
+
+    @Test
+    public void handlesInputsWithoutAllocating() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        BlockUnderCharacterSystem system = new BlockUnderCharacterSystem();
+        Context context = new ContextImpl();
+        context.put(TriggerBlockIndex.class, new EmptyTriggerBlockIndex());
+        context.put(FunnyBlocksStats.class, new FunnyBlocksStatsSystem());
+        InjectionHelper.inject(system, context);
+        system.initialise();
+
+        // A single character, as stand-ins for several would allocate on every call themselves
+        LocationComponent location = new LocationComponent(new Vector3f(0, 1, 0));
+        Vector3f position = new Vector3f();
+        CharacterMoveInputEvent moveInputEvent = mock(CharacterMoveInputEvent.class);
+
+        // The first ticks fill the sample pool and the per character state, the steady state starts after them
+        moveCharacter(system, EntityRef.NULL, location, position, moveInputEvent, 0);
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        moveCharacter(system, EntityRef.NULL, location, position, moveInputEvent, TICKS);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        // Reading the allocated bytes may allocate a few bytes itself, which is well below one byte per input
+        assertEquals(0L, allocated / (TICKS * 2), allocated + " bytes allocated for " + TICKS * 2 + " inputs");
+    }
+
+    @Test
+    public void crossesNothingWithinOneBlock() {
+        TLongList cells = new TLongArrayList();
+        BlockUnderCharacterSystem.collectCrossedCells(new Vector3f(0, 1, 0), new Vector3f(0.3f, 1, -0.2f), cells);
+        assertEquals(0, cells.size());
+    }
+
+    @Test
+    public void crossesBlocksBetweenBothEndsInOrder() {
+        TLongList cells = new TLongArrayList();
+        BlockUnderCharacterSystem.collectCrossedCells(new Vector3f(0, 1, 0), new Vector3f(3, 1, 0), cells);
+        assertEquals(new TLongArrayList(new long[]{
+                TriggerBlockIndex.packPosition(1, 0, 0),
+                TriggerBlockIndex.packPosition(2, 0, 0)}), cells);
+
+        cells.clear();
+        BlockUnderCharacterSystem.collectCrossedCells(new Vector3f(0, 1, 0), new Vector3f(0, 1, -3), cells);
+        assertEquals(new TLongArrayList(new long[]{
+                TriggerBlockIndex.packPosition(0, 0, -1),
+                TriggerBlockIndex.packPosition(0, 0, -2)}), cells);
+    }
+
+    @Test
+    public void crossesOnlyBlocksAtTheHeightsOfBothEnds() {
+        TLongList cells = new TLongArrayList();
+        // Stepping up onto a block in between: nothing below the step or below the start is crossed
+        BlockUnderCharacterSystem.collectCrossedCells(new Vector3f(0, 1, 0), new Vector3f(3, 2, 0), cells);
+        assertEquals(new TLongArrayList(new long[]{
+                TriggerBlockIndex.packPosition(1, 0, 0),
+                TriggerBlockIndex.packPosition(1, 1, 0),
+                TriggerBlockIndex.packPosition(2, 0, 0),
+                TriggerBlockIndex.packPosition(2, 1, 0)}), cells);
+
+        cells.clear();
+        // Falling straight down crosses nothing
+        BlockUnderCharacterSystem.collectCrossedCells(new Vector3f(0, 5, 0), new Vector3f(0, 1, 0), cells);
+        assertEquals(0, cells.size());
+    }
+
+    @Test
+    public void crossesConnectedPathOnDiagonals() {
+        Vector3f from = new Vector3f(-2.3f, 1.2f, 4.1f);
+        Vector3f to = new Vector3f(5.4f, 3.7f, -1.6f);
+        int fromY = Math.round(from.y - 1);
+        int toY = Math.round(to.y - 1);
+        TLongList cells = new TLongArrayList();
+        BlockUnderCharacterSystem.collectCrossedCells(from, to, cells);
+
+        // Each column is checked at both heights, and every column is next to the previous one, starting next to the
+        // column of the start and ending next to the column of the end
+        assertEquals(0, cells.size() % 2);
+        long previous = TriggerBlockIndex.packPosition(Math.round(from.x), fromY, Math.round(from.z));
+        for (int i = 0; i < cells.size(); i += 2) {
+            assertEquals(fromY, TriggerBlockIndex.unpackY(cells.get(i)));
+            assertEquals(toY, TriggerBlockIndex.unpackY(cells.get(i + 1)));
+            assertAdjacentColumns(previous, cells.get(i));
+            previous = cells.get(i);
+        }
+        assertAdjacentColumns(previous, TriggerBlockIndex.packPosition(Math.round(to.x), toY, Math.round(to.z)));
+    }
+
+    private static void assertAdjacentColumns(long a, long b) {
+        int distance = Math.abs(TriggerBlockIndex.unpackX(a) - TriggerBlockIndex.unpackX(b))
+                + Math.abs(TriggerBlockIndex.unpackZ(a) - TriggerBlockIndex.unpackZ(b));
+        assertTrue(distance == 1, "columns are not adjacent");
+    }
+
+    /**
+     * Sends two movement inputs per tick for a character walking back and forth, far enough to cross blocks in between.
+     */
+    private static void moveCharacter(BlockUnderCharacterSystem system, EntityRef character, LocationComponent location,
+                                      Vector3f position, CharacterMoveInputEvent moveInputEvent, int firstTick) {
+        for (int tick = firstTick; tick < firstTick + TICKS; tick++) {
+            for (int input = 0; input < 2; input++) {
+                location.setWorldPosition(position.set((tick * 2 + input) * 3 % 12, 1, 0));
+                system.onCharacterMove(moveInputEvent, character, location);
+            }
+            system.update(0.016f);
+        }
+    }
+
+    /**
+     * An index without any trigger blocks.
+     */
+    private static final class EmptyTriggerBlockIndex implements TriggerBlockIndex {
+        @Override
+        public EntityRef getTriggerBlockAt(int x, int y, int z) {
+            return EntityRef.NULL;
+        }
+
+        @Override
+        public Block getTriggerBlockTypeAt(int x, int y, int z) {
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+    }
+}
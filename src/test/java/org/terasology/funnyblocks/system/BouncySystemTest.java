@@ -0,0 +1,30 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.funnyblocks.system;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BouncySystemTest {
+
+    @Test
+    public void bouncesOncePerLandingWithoutCooldown() {
+        assertTrue(BouncySystem.isArmed(0, true, 1000, 0));
+        assertFalse(BouncySystem.isArmed(0, false, 1000, 0));
+        assertFalse(BouncySystem.isArmed(0, false, 1_000_000, 0));
+    }
+
+    @Test
+    public void bouncesAgainOnceCooldownPassed() {
+        assertFalse(BouncySystem.isArmed(0.5f, false, 1499, 1000));
+        assertTrue(BouncySystem.isArmed(0.5f, false, 1500, 1000));
+    }
+
+    @Test
+    public void cooldownAlsoAppliesToLandings() {
+        assertFalse(BouncySystem.isArmed(0.5f, true, 1200, 1000));
+        assertTrue(BouncySystem.isArmed(0.5f, true, 1200, Long.MIN_VALUE / 2));
+    }
+}
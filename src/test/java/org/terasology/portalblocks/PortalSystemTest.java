@@ -0,0 +1,72 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.portalblocks;
+
+import org.joml.Vector3f;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PortalSystemTest {
+    private static final Vector3i PORTAL = new Vector3i(10, 5, -3);
+
+    private final Set<Vector3i> openPositions = new HashSet<>();
+    private WorldProvider worldProvider;
+
+    @BeforeEach
+    public void setup() {
+        Block solid = mock(Block.class);
+        when(solid.isPenetrable()).thenReturn(false);
+        Block air = mock(Block.class);
+        when(air.isPenetrable()).thenReturn(true);
+
+        worldProvider = mock(WorldProvider.class);
+        when(worldProvider.getBlock(anyInt(), anyInt(), anyInt())).thenAnswer(invocation -> openPositions.contains(
+                new Vector3i(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2))) ? air : solid);
+    }
+
+    @Test
+    public void noLandingSpotWhenPortalIsEnclosed() {
+        assertSame(PortalSystem.NO_LANDING_SPOT, PortalSystem.findLandingSpot(worldProvider, PORTAL, 2));
+    }
+
+    @Test
+    public void landsNextToPortalWhereCharacterFits() {
+        open(PORTAL.x + 1, PORTAL.z, 2);
+        assertEquals(new Vector3f(PORTAL.x + 1, PORTAL.y + 1, PORTAL.z), PortalSystem.findLandingSpot(worldProvider, PORTAL, 2));
+    }
+
+    @Test
+    public void skipsSpotsTooLowForCharacter() {
+        open(PORTAL.x - 1, PORTAL.z - 1, 1);
+        open(PORTAL.x, PORTAL.z + 1, 2);
+        assertEquals(new Vector3f(PORTAL.x, PORTAL.y + 1, PORTAL.z + 1), PortalSystem.findLandingSpot(worldProvider, PORTAL, 2));
+        assertEquals(new Vector3f(PORTAL.x - 1, PORTAL.y + 1, PORTAL.z - 1), PortalSystem.findLandingSpot(worldProvider, PORTAL, 1));
+    }
+
+    @Test
+    public void neverLandsOnPortalItself() {
+        open(PORTAL.x, PORTAL.z, 2);
+        assertSame(PortalSystem.NO_LANDING_SPOT, PortalSystem.findLandingSpot(worldProvider, PORTAL, 2));
+    }
+
+    /**
+     * Clears the given number of blocks from the portal's height upwards.
+     */
+    private void open(int x, int z, int height) {
+        for (int y = PORTAL.y; y < PORTAL.y + height; y++) {
+            openPositions.add(new Vector3i(x, y, z));
+        }
+    }
+}